@@ -116,6 +116,10 @@ public class BlabberDialogueScreen<P extends DialogueLayout.Params> extends Hand
     // Screen state
     protected int selectedChoice;
     protected boolean hoveringChoice;
+    /**
+     * Set after the player reaches the end of the dialogue, until the server either closes this screen or swaps another dialogue into it
+     */
+    protected boolean awaitingServer;
 
     protected Map<String, DialogueIllustrationRenderer<?>> illustrations = new HashMap<>();
 
@@ -138,8 +142,30 @@ public class BlabberDialogueScreen<P extends DialogueLayout.Params> extends Hand
     protected void init() {
         super.init();
         this.prepareLayout();
-        this.illustrations.clear();
-        this.handler.getIllustrations().forEach((key, illustration) -> this.illustrations.put(key, BlabberClient.createRenderer(illustration)));
+        this.createIllustrationRenderers();
+    }
+
+    /**
+     * Creates renderers for the illustrations of the current dialogue, reusing the existing ones for illustrations that did not change
+     */
+    protected void createIllustrationRenderers() {
+        Map<String, DialogueIllustrationRenderer<?>> previous = this.illustrations;
+        this.illustrations = new HashMap<>();
+        this.handler.getIllustrations().forEach((key, illustration) -> {
+            DialogueIllustrationRenderer<?> renderer = previous.get(key);
+            this.illustrations.put(key, renderer != null && renderer.getIllustration().equals(illustration) ? renderer : BlabberClient.createRenderer(illustration));
+        });
+    }
+
+    /**
+     * Called when the server swaps a different dialogue into this screen's handler, or moves it to a different state than the client expected
+     */
+    public void onDialogueUpdated() {
+        this.awaitingServer = false;
+        this.selectedChoice = 0;
+        this.hoveringChoice = false;
+        this.prepareLayout();
+        this.createIllustrationRenderers();
     }
 
     protected void prepareLayout() {
@@ -166,7 +192,7 @@ public class BlabberDialogueScreen<P extends DialogueLayout.Params> extends Hand
 
     @Override
     public boolean mouseClicked(double x, double y, int button) {
-        if (hoveringChoice) {
+        if (hoveringChoice && !this.awaitingServer) {
             this.confirmChoice(this.selectedChoice);
         }
         return true;
@@ -174,6 +200,9 @@ public class BlabberDialogueScreen<P extends DialogueLayout.Params> extends Hand
 
     @Override
     public boolean keyPressed(int key, int scancode, int modifiers) {
+        if (this.awaitingServer) {
+            return super.keyPressed(key, scancode, modifiers);
+        }
         GameOptions options = MinecraftClient.getInstance().options;
         if (key == GLFW.GLFW_KEY_ENTER || options.inventoryKey.matchesKey(key, scancode)) {
             this.confirmChoice(this.selectedChoice);
@@ -191,14 +220,21 @@ public class BlabberDialogueScreen<P extends DialogueLayout.Params> extends Hand
 
     private @Nullable StateType confirmChoice(int selectedChoice) {
         assert this.client != null;
-        if (this.handler.getAvailableChoices().get(selectedChoice).unavailabilityMessage().isPresent()) {
+        AvailableChoice choice = this.handler.getAvailableChoices().get(selectedChoice);
+        if (choice.unavailabilityMessage().isPresent() || !this.handler.isNextStateKnown(choice.originalChoiceIndex())) {
             return null;
         }
 
         StateType result = this.makeChoice(selectedChoice);
 
         switch (result) {
-            case END_DIALOGUE -> this.client.setScreen(null);
+            case END_DIALOGUE -> {
+                // The end state's action may start another dialogue in this same screen, so the server decides when to close it
+                this.awaitingServer = true;
+                if (this.client.currentScreen != this) {
+                    this.client.setScreen(this);
+                }
+            }
             case ASK_CONFIRMATION -> {
                 ImmutableList<AvailableChoice> choices = this.handler.getAvailableChoices();
                 this.client.setScreen(new ConfirmScreen(
@@ -263,6 +299,8 @@ public class BlabberDialogueScreen<P extends DialogueLayout.Params> extends Hand
 
     @Override
     public void render(DrawContext context, int mouseX, int mouseY, float tickDelta) {
+        if (this.awaitingServer) return;
+
         super.render(context, mouseX, mouseY, tickDelta);
 
         assert client != null;
@@ -18,7 +18,9 @@
 package org.ladysnake.blabber.impl.client;
 
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.networking.v1.ClientConfigurationConnectionEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientConfigurationNetworking;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
 import net.minecraft.client.gui.screen.ingame.HandledScreens;
 import net.minecraft.entity.player.PlayerInventory;
@@ -40,14 +42,22 @@ import org.ladysnake.blabber.impl.client.illustrations.TextureIllustrationRender
 import org.ladysnake.blabber.impl.common.BlabberRegistrar;
 import org.ladysnake.blabber.impl.common.DialogueRegistry;
 import org.ladysnake.blabber.impl.common.DialogueScreenHandler;
+import org.ladysnake.blabber.impl.common.DialogueTemplateCache;
 import org.ladysnake.blabber.impl.common.illustrations.DialogueIllustrationCollection;
 import org.ladysnake.blabber.impl.common.illustrations.DialogueIllustrationItem;
 import org.ladysnake.blabber.impl.common.illustrations.DialogueIllustrationTexture;
 import org.ladysnake.blabber.impl.common.illustrations.entity.DialogueIllustrationFakePlayer;
 import org.ladysnake.blabber.impl.common.illustrations.entity.DialogueIllustrationNbtEntity;
 import org.ladysnake.blabber.impl.common.illustrations.entity.DialogueIllustrationSelectorEntity;
+import org.ladysnake.blabber.impl.common.machine.DialogueStateMachine;
 import org.ladysnake.blabber.impl.common.packets.ChoiceAvailabilityPayload;
+import org.ladysnake.blabber.impl.common.packets.CompactTemplatesPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueListDeltaPayload;
 import org.ladysnake.blabber.impl.common.packets.DialogueListPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueListRequestPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueResyncPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueStatesPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueSwapPayload;
 import org.ladysnake.blabber.impl.common.packets.SelectedDialogueStatePayload;
 
 import java.util.LinkedHashMap;
@@ -68,20 +78,60 @@ public final class BlabberClient implements ClientModInitializer {
         BlabberScreenRegistry.register(BlabberRegistrar.CLASSIC_LAYOUT, BlabberDialogueScreen::new);
         BlabberScreenRegistry.register(BlabberRegistrar.RPG_LAYOUT, BlabberRpgDialogueScreen::new);
         HandledScreens.register(BlabberRegistrar.DIALOGUE_SCREEN_HANDLER, (HandledScreens.Provider<DialogueScreenHandler, BlabberDialogueScreen<?>>) BlabberClient::createDialogueScreen);
-        ClientConfigurationNetworking.registerGlobalReceiver(DialogueListPayload.ID, (packet, ctx) -> DialogueRegistry.setClientIds(packet.dialogueIds()));
-        ClientPlayNetworking.registerGlobalReceiver(DialogueListPayload.ID, (packet, ctx) -> DialogueRegistry.setClientIds(packet.dialogueIds()));
+        ClientConfigurationNetworking.registerGlobalReceiver(DialogueListPayload.ID, (packet, ctx) -> handleDialogueList(packet));
+        ClientPlayNetworking.registerGlobalReceiver(DialogueListPayload.ID, (packet, ctx) -> handleDialogueList(packet));
+        ClientPlayNetworking.registerGlobalReceiver(DialogueListDeltaPayload.ID, (packet, ctx) -> {
+            if (DialogueRegistry.setClientIds(packet)) {
+                DialogueTemplateCache.getClientCache().retainAll(DialogueRegistry.getClientDialogues());
+            } else {
+                ctx.responseSender().sendPacket(DialogueListRequestPayload.INSTANCE);
+            }
+        });
+        // The server starts tracking the cache from scratch whenever the client gets (re)configured
+        ClientConfigurationConnectionEvents.INIT.register((handler, client) -> DialogueTemplateCache.getClientCache().clear());
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> DialogueTemplateCache.getClientCache().clear());
+        // Only registered to let the server know that this client can read compact templates
+        ClientPlayNetworking.registerGlobalReceiver(CompactTemplatesPayload.ID, (packet, ctx) -> {});
         ClientPlayNetworking.registerGlobalReceiver(ChoiceAvailabilityPayload.ID, (packet, ctx) -> {
             if (ctx.player().currentScreenHandler instanceof DialogueScreenHandler dialogueScreenHandler) {
-                dialogueScreenHandler.handleAvailabilityUpdate(packet);
+                if (dialogueScreenHandler.handleAvailabilityUpdate(packet)) {
+                    ctx.responseSender().sendPacket(DialogueResyncPayload.INSTANCE);
+                }
+            }
+        });
+        ClientPlayNetworking.registerGlobalReceiver(DialogueStatesPayload.ID, (packet, ctx) -> {
+            if (ctx.player().currentScreenHandler instanceof DialogueScreenHandler dialogueScreenHandler) {
+                dialogueScreenHandler.handleStatesUpdate(packet);
+            }
+        });
+        ClientPlayNetworking.registerGlobalReceiver(DialogueSwapPayload.ID, (packet, ctx) -> {
+            if (ctx.player().currentScreenHandler instanceof DialogueScreenHandler dialogueScreenHandler && dialogueScreenHandler.syncId == packet.syncId()) {
+                DialogueStateMachine dialogue = packet.opening().dialogue();
+                dialogue.applyAvailabilityUpdate(packet.opening().availableChoices());
+                dialogueScreenHandler.swapDialogue(dialogue, packet.opening().interlocutorId().map(ctx.player().getWorld()::getEntityById).orElse(null));
+                if (ctx.client().currentScreen instanceof BlabberDialogueScreen<?> screen && screen.getScreenHandler() == dialogueScreenHandler) {
+                    screen.onDialogueUpdated();
+                }
             }
         });
         ClientPlayNetworking.registerGlobalReceiver(SelectedDialogueStatePayload.ID, (packet, ctx) -> {
             if (ctx.player().currentScreenHandler instanceof DialogueScreenHandler dialogueScreenHandler) {
-                dialogueScreenHandler.setCurrentState(packet.stateKey());
+                if (dialogueScreenHandler.handleStateSelection(packet)) {
+                    ctx.responseSender().sendPacket(DialogueResyncPayload.INSTANCE);
+                }
+                // The server may have rejected the choice that made the screen wait for it to close
+                if (ctx.client().currentScreen instanceof BlabberDialogueScreen<?> screen && screen.getScreenHandler() == dialogueScreenHandler) {
+                    screen.onDialogueUpdated();
+                }
             }
         });
     }
 
+    private static void handleDialogueList(DialogueListPayload packet) {
+        DialogueRegistry.setClientIds(packet.version(), packet.dialogues());
+        DialogueTemplateCache.getClientCache().retainAll(packet.dialogues());
+    }
+
     public static <P extends DialogueLayout.Params> void registerLayoutScreen(
             DialogueLayoutType<P> layoutId,
             HandledScreens.Provider<DialogueScreenHandler, BlabberDialogueScreen<P>> screenProvider
@@ -113,6 +113,21 @@ public final class Blabber implements ModInitializer {
 		}
 	}
 
+	/**
+	 * Requests that the availability of choices in the player's current dialogue be re-evaluated on the next tick.
+	 *
+	 * <p>This is only useful when the {@code blabberEventDrivenConditions} gamerule is enabled, in which case
+	 * Blabber cannot know about every change that may affect custom predicates.
+	 * This includes changes to the time of day and the weather, which only get picked up on their own
+	 * by conditions with a {@code "world"} scope.
+	 * Otherwise, conditions get re-evaluated periodically anyway.
+	 *
+	 * @param player the player whose dialogue conditions are outdated
+	 */
+	public static void invalidateConditions(ServerPlayerEntity player) {
+		PlayerDialogueTracker.get(player).invalidateConditions();
+	}
+
 	/**
 	 * Register a basic {@link DialogueAction} to handle dialogue choices.
 	 *
@@ -35,6 +35,16 @@ public interface DialogueIllustration {
      */
     DialogueIllustrationType<? extends DialogueIllustration> getType();
 
+    /**
+     * Tells whether {@link #parseText(ServerCommandSource, Entity)} may return a different illustration.
+     * Illustrations for which this returns {@code false} get shared between every player viewing the dialogue.
+     * @return {@code true} if this illustration contains text to parse, such as entity selectors, scores or NBT components
+     */
+    default boolean hasParsableText() {
+        // Implementations that do not override this could be doing anything when parsing text
+        return true;
+    }
+
     /**
      * If this illustration contains some text, this will be parsed *server-side*.
      * @param source the context in which this is parsed
@@ -25,6 +25,7 @@ import net.fabricmc.fabric.api.event.registry.FabricRegistryBuilder;
 import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
 import net.fabricmc.fabric.api.networking.v1.ServerConfigurationConnectionEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerConfigurationNetworking;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.fabricmc.fabric.api.screenhandler.v1.ExtendedScreenHandlerType;
 import net.minecraft.command.CommandSource;
@@ -48,15 +49,22 @@ import org.ladysnake.blabber.impl.common.commands.SettingArgumentType;
 import org.ladysnake.blabber.impl.common.machine.DialogueStateMachine;
 import org.ladysnake.blabber.impl.common.packets.ChoiceAvailabilityPayload;
 import org.ladysnake.blabber.impl.common.packets.ChoiceSelectionPayload;
+import org.ladysnake.blabber.impl.common.packets.CompactTemplatesPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueListDeltaPayload;
 import org.ladysnake.blabber.impl.common.packets.DialogueListPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueListRequestPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueResyncPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueStatesPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueSwapPayload;
 import org.ladysnake.blabber.impl.common.packets.SelectedDialogueStatePayload;
+import org.ladysnake.blabber.impl.common.serialization.PacketCompression;
+import org.ladysnake.blabber.impl.common.settings.BlabberGameRules;
 import org.ladysnake.blabber.impl.common.settings.BlabberSettingsComponent;
 import org.ladysnake.cca.api.v3.entity.EntityComponentFactoryRegistry;
 import org.ladysnake.cca.api.v3.entity.EntityComponentInitializer;
 import org.ladysnake.cca.api.v3.entity.RespawnCopyStrategy;
 
 import java.util.Optional;
-import java.util.Set;
 
 public final class BlabberRegistrar implements EntityComponentInitializer {
     public static final RegistryKey<Registry<MapCodec<? extends DialogueActionV2>>> ACTION_REGISTRY_KEY = RegistryKey.ofRegistry(Blabber.id("dialogue_actions"));
@@ -78,7 +86,7 @@ public final class BlabberRegistrar implements EntityComponentInitializer {
         dialogue.applyAvailabilityUpdate(data.availableChoices());
         Optional<Entity> interlocutor = data.interlocutorId().map(inventory.player.getWorld()::getEntityById);
         return new DialogueScreenHandler(syncId, dialogue, interlocutor.orElse(null));
-    }, DialogueScreenHandlerFactory.DialogueOpeningData.PACKET_CODEC));
+    }, DialogueScreenHandlerFactory.DialogueOpeningData.COMPRESSED_CODEC));
     public static final DialogueLayoutType<DefaultLayoutParams> CLASSIC_LAYOUT = new DialogueLayoutType<>(DefaultLayoutParams.CODEC, DefaultLayoutParams.PACKET_CODEC, DefaultLayoutParams.DEFAULT);
     public static final DialogueLayoutType<DefaultLayoutParams> RPG_LAYOUT = new DialogueLayoutType<>(DefaultLayoutParams.CODEC, DefaultLayoutParams.PACKET_CODEC, DefaultLayoutParams.DEFAULT);
 
@@ -91,31 +99,49 @@ public final class BlabberRegistrar implements EntityComponentInitializer {
         Registry.register(Registries.LOOT_CONDITION_TYPE, Blabber.id("interlocutor_properties"), InterlocutorPropertiesLootCondition.TYPE);
         ArgumentTypeRegistry.registerArgumentType(Blabber.id("setting"), SettingArgumentType.class, ConstantArgumentSerializer.of(SettingArgumentType::setting));
 
+        BlabberGameRules.init();
         DialogueLoader.init();
+        DialogueSessionManager.init();
+        DialogueNetworkDispatcher.init();
 
-        PayloadTypeRegistry.configurationS2C().register(DialogueListPayload.ID, DialogueListPayload.PACKET_CODEC);
+        // Choice availability and state selection payloads are only a few bytes long, compressing them would be pointless
+        PayloadTypeRegistry.configurationS2C().register(DialogueListPayload.ID, DialogueListPayload.COMPRESSED_CODEC);
 
-        PayloadTypeRegistry.playS2C().register(DialogueListPayload.ID, DialogueListPayload.PACKET_CODEC);
+        PayloadTypeRegistry.playS2C().register(DialogueListPayload.ID, DialogueListPayload.COMPRESSED_CODEC);
+        PayloadTypeRegistry.playS2C().register(DialogueListDeltaPayload.ID, DialogueListDeltaPayload.COMPRESSED_CODEC);
         PayloadTypeRegistry.playS2C().register(ChoiceAvailabilityPayload.ID, ChoiceAvailabilityPayload.PACKET_CODEC);
         PayloadTypeRegistry.playS2C().register(SelectedDialogueStatePayload.ID, SelectedDialogueStatePayload.PACKET_CODEC);
+        PayloadTypeRegistry.playS2C().register(DialogueStatesPayload.ID, PacketCompression.compressed("dialogue_states", DialogueStatesPayload.PACKET_CODEC));
+        PayloadTypeRegistry.playS2C().register(CompactTemplatesPayload.ID, CompactTemplatesPayload.PACKET_CODEC);
+        // The opening data within gets compressed on its own, so that cached openings can be reused as is
+        PayloadTypeRegistry.playS2C().register(DialogueSwapPayload.ID, DialogueSwapPayload.PACKET_CODEC);
 
         PayloadTypeRegistry.playC2S().register(ChoiceSelectionPayload.ID, ChoiceSelectionPayload.PACKET_CODEC);
+        PayloadTypeRegistry.playC2S().register(DialogueResyncPayload.ID, DialogueResyncPayload.PACKET_CODEC);
+        PayloadTypeRegistry.playC2S().register(DialogueListRequestPayload.ID, DialogueListRequestPayload.PACKET_CODEC);
 
         ServerPlayNetworking.registerGlobalReceiver(ChoiceSelectionPayload.ID, (payload, ctx) -> {
             if (ctx.player().currentScreenHandler instanceof DialogueScreenHandler dialogueHandler) {
                 if (!dialogueHandler.makeChoice(ctx.player(), payload.selectedChoice())) {
-                    ctx.responseSender().sendPacket(new SelectedDialogueStatePayload(dialogueHandler.getCurrentStateKey()));
+                    DialogueNetworkDispatcher.send(ctx.player(), dialogueHandler.createStateSelectionPacket());
                 }
             }
         });
+        ServerPlayNetworking.registerGlobalReceiver(DialogueResyncPayload.ID, (payload, ctx) -> {
+            if (ctx.player().currentScreenHandler instanceof DialogueScreenHandler dialogueHandler) {
+                dialogueHandler.resync(ctx.player());
+            }
+        });
+        ServerPlayNetworking.registerGlobalReceiver(DialogueListRequestPayload.ID, (payload, ctx) -> DialogueNetworkDispatcher.send(ctx.player(), DialogueRegistry.getListPayload()));
         ServerConfigurationConnectionEvents.CONFIGURE.register((handler, server) -> {
+            DialogueTemplateCache.removeClientCacheMirror(handler.getDebugProfile().getId());
             if (ServerConfigurationNetworking.canSend(handler, DialogueListPayload.ID)) {
-                Set<Identifier> dialogueIds = DialogueRegistry.getIds();
-                ServerConfigurationNetworking.send(handler, new DialogueListPayload(dialogueIds));
+                ServerConfigurationNetworking.send(handler, DialogueRegistry.getListPayload());
             } else {
                 Blabber.LOGGER.warn("{} does not have Blabber installed, this will cause issues if they trigger a dialogue", handler.getDebugProfile().getName());
             }
         });
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> DialogueTemplateCache.removeClientCacheMirror(handler.getPlayer().getUuid()));
     }
 
     public static <T extends CustomPayload> CustomPayload.Id<T> payloadId(String name) {
@@ -17,16 +17,22 @@
  */
 package org.ladysnake.blabber.impl.common;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.gson.JsonParseException;
-import com.mojang.serialization.JsonOps;
+import com.google.gson.stream.JsonReader;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
 import net.fabricmc.fabric.api.resource.SimpleResourceReloadListener;
+import net.minecraft.loot.condition.LootCondition;
+import net.minecraft.loot.context.LootContext;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.RegistryWrapper;
+import net.minecraft.registry.entry.RegistryEntry;
 import net.minecraft.resource.LifecycledResourceManager;
+import net.minecraft.resource.Resource;
 import net.minecraft.resource.ResourceManager;
 import net.minecraft.resource.ResourceType;
 import net.minecraft.server.MinecraftServer;
@@ -34,71 +40,170 @@ import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.profiler.Profiler;
 import org.ladysnake.blabber.Blabber;
+import org.ladysnake.blabber.impl.common.model.ConditionScope;
+import org.ladysnake.blabber.impl.common.model.DialogueChoiceCondition;
+import org.ladysnake.blabber.impl.common.model.DialogueGraph;
+import org.ladysnake.blabber.impl.common.model.DialogueState;
 import org.ladysnake.blabber.impl.common.model.DialogueTemplate;
+import org.ladysnake.blabber.impl.common.packets.DialogueListDeltaPayload;
 import org.ladysnake.blabber.impl.common.packets.DialogueListPayload;
+import org.ladysnake.blabber.impl.common.serialization.DialogueTemplateReader;
 import org.ladysnake.blabber.impl.common.validation.DialogueLoadingException;
 import org.ladysnake.blabber.impl.common.validation.DialogueValidator;
 import org.ladysnake.blabber.impl.common.validation.ValidationResult;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
-public final class DialogueLoader implements SimpleResourceReloadListener<Map<Identifier, DialogueTemplate>>, ServerLifecycleEvents.EndDataPackReload {
+public final class DialogueLoader implements SimpleResourceReloadListener<DialogueLoader.LoadedDialogues>, ServerLifecycleEvents.StartDataPackReload, ServerLifecycleEvents.EndDataPackReload {
     public static final String BLABBER_DIALOGUES_PATH = "blabber/dialogues";
     public static final Identifier ID = Blabber.id("dialogue_loader");
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * Dialogues from the last successful reload, used to skip decoding files that did not change
+     */
+    private volatile Map<Identifier, DialogueRegistry.Entry> previousDialogues = Map.of();
+    /**
+     * Validation results of the dialogues from the last successful reload, reported again when those dialogues get reused
+     */
+    private volatile Map<Identifier, ValidationResult> previousValidations = Map.of();
+    /**
+     * The version of the dialogue list that players had before the last reload, only accessed on the server thread
+     */
+    private int previousListVersion = -1;
 
     public static void init() {
         DialogueLoader instance = new DialogueLoader();
         ResourceManagerHelper.get(ResourceType.SERVER_DATA).registerReloadListener(instance);
+        ServerLifecycleEvents.START_DATA_PACK_RELOAD.register(instance);
         ServerLifecycleEvents.END_DATA_PACK_RELOAD.register(instance);
+        ServerLifecycleEvents.SERVER_STARTING.register(DialogueLoader::resolveConditions);
     }
 
     @Override
-    public CompletableFuture<Map<Identifier, DialogueTemplate>> load(ResourceManager manager, Profiler profiler, Executor executor) {
-        return CompletableFuture.supplyAsync(() -> {
-            Map<Identifier, DialogueTemplate> data = new HashMap<>();
-            manager.findResources(BLABBER_DIALOGUES_PATH, (res) -> res.getPath().endsWith(".json")).forEach((location, resource) -> {
-                try (Reader in = new InputStreamReader(resource.getInputStream())) {
-                    JsonObject jsonObject = GSON.fromJson(in, JsonObject.class);
-                    Identifier id = Identifier.of(location.getNamespace(), location.getPath().substring(BLABBER_DIALOGUES_PATH.length() + 1, location.getPath().length() - 5));
-                    DialogueTemplate dialogue = DialogueTemplate.CODEC.parse(JsonOps.INSTANCE, jsonObject).getOrThrow(message -> {
-                        Blabber.LOGGER.error("(Blabber) Could not parse dialogue file from {}: {}", location, message);
-                        return new RuntimeException(message);
-                    });
-                    switch (DialogueValidator.validateStructure(dialogue)) {
-                        case ValidationResult.Error error -> {
-                            Blabber.LOGGER.error("(Blabber) Could not validate dialogue {}: {}", id, error.message());
-                            throw new DialogueLoadingException("Could not validate dialogue file from " + location);
-                        }
-                        case ValidationResult.Warnings warnings -> {
-                            Blabber.LOGGER.warn("(Blabber) Dialogue {} had warnings: {}", id, warnings.message());
-                            data.put(id, dialogue);
-                        }
-                        case ValidationResult.Success ignored -> {
-                            data.put(id, dialogue);
-                        }
+    public CompletableFuture<LoadedDialogues> load(ResourceManager manager, Profiler profiler, Executor executor) {
+        Map<Identifier, DialogueRegistry.Entry> previous = this.previousDialogues;
+        Map<Identifier, ValidationResult> previousValidations = this.previousValidations;
+        return CompletableFuture.supplyAsync(() -> List.copyOf(new TreeMap<>(manager.findResources(BLABBER_DIALOGUES_PATH, (res) -> res.getPath().endsWith(".json"))).entrySet()), executor)
+                .thenCompose(resources -> {
+                    // Files are parsed concurrently, but always reported in resource order so that errors stay deterministic
+                    AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+                    List<CompletableFuture<ParsedDialogue>> tasks = new ArrayList<>(resources.size());
+                    for (int i = 0; i < resources.size(); i++) {
+                        int index = i;
+                        Map.Entry<Identifier, Resource> entry = resources.get(i);
+                        tasks.add(CompletableFuture.supplyAsync(() -> {
+                            // Any file after a known failure is never going to be reported, no need to parse it
+                            if (index > firstFailure.get()) return null;
+                            try {
+                                ParsedDialogue parsed = parseDialogue(entry.getKey(), entry.getValue(), previous, previousValidations);
+                                if (parsed.validation() instanceof ValidationResult.Error) {
+                                    firstFailure.accumulateAndGet(index, Math::min);
+                                }
+                                return parsed;
+                            } catch (RuntimeException e) {
+                                firstFailure.accumulateAndGet(index, Math::min);
+                                throw e;
+                            }
+                        }, executor));
                     }
-                } catch (IOException | JsonParseException e) {
-                    Blabber.LOGGER.error("(Blabber) Could not read dialogue file from {}", location, e);
-                    throw new DialogueLoadingException("Could not read dialogue file from " + location, e);
+                    return CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new))
+                            .handle((unused, t) -> mergeDialogues(tasks, previous));
+                });
+    }
+
+    private static ParsedDialogue parseDialogue(Identifier location, Resource resource, Map<Identifier, DialogueRegistry.Entry> previous, Map<Identifier, ValidationResult> previousValidations) {
+        Identifier id = Identifier.of(location.getNamespace(), location.getPath().substring(BLABBER_DIALOGUES_PATH.length() + 1, location.getPath().length() - 5));
+        byte[] content;
+        try (InputStream in = resource.getInputStream()) {
+            content = in.readAllBytes();
+        } catch (IOException e) {
+            throw new DialogueLoadingException("Could not read dialogue file from " + location, e);
+        }
+
+        HashCode hash = Hashing.sha256().hashBytes(content);
+        DialogueRegistry.Entry cached = previous.get(id);
+        if (cached != null && cached.contentHash().equals(hash)) {
+            // Same bytes, same dialogue - it has already been validated during a previous reload, but its warnings still apply
+            return new ParsedDialogue(location, id, cached, previousValidations.getOrDefault(id, ValidationResult.success()), true);
+        }
+
+        try (JsonReader in = new JsonReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+            in.setLenient(true);    // match Gson's defaults
+            DialogueTemplate dialogue = DialogueTemplateReader.read(in).getOrThrow(message -> new DialogueLoadingException("Could not parse dialogue file from " + location + ": " + message));
+            return new ParsedDialogue(location, id, new DialogueRegistry.Entry(dialogue, DialogueGraph.compile(dialogue), hash), DialogueValidator.validateStructure(dialogue), false);
+        } catch (IOException | JsonParseException e) {
+            throw new DialogueLoadingException("Could not read dialogue file from " + location, e);
+        }
+    }
+
+    private static LoadedDialogues mergeDialogues(List<CompletableFuture<ParsedDialogue>> tasks, Map<Identifier, DialogueRegistry.Entry> previous) {
+        Map<Identifier, DialogueRegistry.Entry> data = new HashMap<>();
+        Map<Identifier, ValidationResult> validations = new HashMap<>();
+        int reused = 0;
+        for (CompletableFuture<ParsedDialogue> task : tasks) {
+            ParsedDialogue parsed;
+            try {
+                parsed = task.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof DialogueLoadingException loadingException) {
+                    Blabber.LOGGER.error("(Blabber) {}", loadingException.getMessage(), loadingException.getCause());
+                    throw loadingException;
                 }
-            });
-            return data;
-        }, executor);
+                throw e;
+            }
+            if (parsed == null) {
+                // Skipped because of an earlier failure, which should have been thrown already
+                throw new IllegalStateException("Dialogue file was skipped without a prior failure");
+            }
+            switch (parsed.validation()) {
+                case ValidationResult.Error error -> {
+                    Blabber.LOGGER.error("(Blabber) Could not validate dialogue {}: {}", parsed.id(), error.message());
+                    throw new DialogueLoadingException("Could not validate dialogue file from " + parsed.location());
+                }
+                case ValidationResult.Warnings warnings -> {
+                    Blabber.LOGGER.warn("(Blabber) Dialogue {} had warnings: {}", parsed.id(), warnings.message());
+                    data.put(parsed.id(), parsed.dialogue());
+                    validations.put(parsed.id(), warnings);
+                }
+                case ValidationResult.Success ignored -> {
+                    data.put(parsed.id(), parsed.dialogue());
+                }
+            }
+            if (parsed.reused()) reused++;
+        }
+        int removed = 0;
+        for (Identifier id : previous.keySet()) {
+            if (!data.containsKey(id)) removed++;
+        }
+        return new LoadedDialogues(data, validations, reused, data.size() - reused, removed);
     }
 
     @Override
-    public CompletableFuture<Void> apply(Map<Identifier, DialogueTemplate> data, ResourceManager manager, Profiler profiler, Executor executor) {
-        return CompletableFuture.runAsync(() -> DialogueRegistry.setEntries(data), executor);
+    public CompletableFuture<Void> apply(LoadedDialogues data, ResourceManager manager, Profiler profiler, Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            DialogueRegistry.setEntries(data.dialogues());
+            this.previousDialogues = data.dialogues();
+            this.previousValidations = data.validations();
+            Blabber.LOGGER.info("(Blabber) Loaded {} dialogues ({} unchanged, {} parsed, {} removed)", data.dialogues().size(), data.reused(), data.parsed(), data.removed());
+        }, executor);
     }
 
     @Override
@@ -111,18 +216,103 @@ public final class DialogueLoader implements SimpleResourceReloadListener<Map<Id
         return Set.of();
     }
 
+    @Override
+    public void startDataPackReload(MinecraftServer server, LifecycledResourceManager resourceManager) {
+        this.previousListVersion = DialogueRegistry.getListVersion();
+    }
+
     @Override
     public void endDataPackReload(MinecraftServer server, LifecycledResourceManager resourceManager, boolean success) {
         if (success) {
-            Set<Identifier> dialogueIds = DialogueRegistry.getIds();
-            DialogueListPayload idSyncPacket = new DialogueListPayload(dialogueIds);
-            for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-                ServerPlayNetworking.send(player, idSyncPacket);
+            resolveConditions(server);
+            DialogueListPayload idSyncPacket = DialogueRegistry.getListPayload();
+            Map<Identifier, Long> contentHashes = idSyncPacket.dialogues();
+            List<ServerPlayerEntity> players = server.getPlayerManager().getPlayerList();
+            this.syncDialogueList(players, idSyncPacket);
+            for (ServerPlayerEntity player : players) {
+                DialogueTemplateCache.getClientCacheMirror(player).retainAll(contentHashes);
                 PlayerDialogueTracker.get(player).updateDialogue();
             }
         }
     }
 
+    /**
+     * Sends the changes made to the dialogue list by the last reload, if any.
+     *
+     * <p>Players get a {@link DialogueListDeltaPayload} when they can read it and it applies to the version they had before the reload,
+     * and the full list otherwise.
+     */
+    private void syncDialogueList(List<ServerPlayerEntity> players, DialogueListPayload idSyncPacket) {
+        int previousVersion = this.previousListVersion;
+        if (idSyncPacket.version() == previousVersion) return;
+        DialogueListDeltaPayload delta = DialogueRegistry.getListDelta();
+        boolean deltaApplies = delta != null && delta.baseVersion() == previousVersion && delta.version() == idSyncPacket.version();
+        List<ServerPlayerEntity> deltaRecipients = new ArrayList<>();
+        List<ServerPlayerEntity> fullListRecipients = new ArrayList<>();
+        for (ServerPlayerEntity player : players) {
+            (deltaApplies && ServerPlayNetworking.canSend(player, DialogueListDeltaPayload.ID) ? deltaRecipients : fullListRecipients).add(player);
+        }
+        if (deltaApplies) {
+            DialogueNetworkDispatcher.broadcast(deltaRecipients, delta);
+        }
+        DialogueNetworkDispatcher.broadcast(fullListRecipients, idSyncPacket);
+    }
+
+    /**
+     * Looks up the predicates used by every loaded dialogue, so that they do not need to be queried again when testing conditions.
+     *
+     * <p>Predicates are only available once the server's reloadable registries have been (re)loaded,
+     * which is after {@link #apply} runs.
+     */
+    private static void resolveConditions(MinecraftServer server) {
+        RegistryWrapper.WrapperLookup lookup = server.getReloadableRegistries().createRegistryLookup();
+        Map<Identifier, DialogueRegistry.Entry> resolved = new HashMap<>();
+        int missing = 0;
+        for (Identifier id : DialogueRegistry.getIds()) {
+            DialogueRegistry.Entry entry = DialogueRegistry.getEntry(id).orElseThrow();
+            DialogueGraph graph = entry.graph();
+            DialogueState[] states = graph.sortStates(entry.template().states());
+            @SuppressWarnings("unchecked") LootContext.Entry<LootCondition>[] conditions = new LootContext.Entry[graph.getChoiceOffset(graph.stateCount())];
+            BitSet worldScopedConditions = new BitSet();
+            for (int state = 0; state < states.length; state++) {
+                int firstChoice = graph.getChoiceOffset(state);
+                int endChoice = firstChoice + graph.getChoiceCount(state);
+                for (int choice = graph.nextConditionalChoice(firstChoice); choice >= 0 && choice < endChoice; choice = graph.nextConditionalChoice(choice + 1)) {
+                    DialogueChoiceCondition choiceCondition = states[state].choices().get(choice - firstChoice).condition().orElseThrow();
+                    RegistryKey<LootCondition> predicateId = choiceCondition.predicate();
+                    Optional<LootCondition> condition = lookup.getOptionalEntry(RegistryKeys.PREDICATE, predicateId).map(RegistryEntry::value);
+                    if (condition.isEmpty()) {
+                        Blabber.LOGGER.error("(Blabber) Dialogue {} refers to unknown predicate {} in state {}, the corresponding choice will never be available", id, predicateId.getValue(), graph.getStateKey(state));
+                        missing++;
+                    } else if (choiceCondition.scope() == ConditionScope.WORLD) {
+                        // World-scoped conditions get tested without a player or position, so they cannot require either
+                        if (condition.get().getRequiredParameters().isEmpty()) {
+                            worldScopedConditions.set(choice);
+                        } else {
+                            Blabber.LOGGER.warn("(Blabber) Dialogue {} marks predicate {} in state {} as world-scoped, but it requires {}, testing it for each player instead", id, predicateId.getValue(), graph.getStateKey(state), condition.get().getRequiredParameters());
+                        }
+                    }
+                    conditions[choice] = condition.map(LootContext::predicate).orElse(null);
+                }
+            }
+            resolved.put(id, entry.withConditions(conditions, worldScopedConditions));
+        }
+        DialogueRegistry.setEntries(resolved);
+        if (missing > 0) {
+            Blabber.LOGGER.error("(Blabber) {} dialogue choices refer to unknown predicates", missing);
+        }
+    }
+
     private DialogueLoader() {}
 
+    private record ParsedDialogue(Identifier location, Identifier id, DialogueRegistry.Entry dialogue, ValidationResult validation, boolean reused) { }
+
+    /**
+     * @param validations the validation results of the dialogues that loaded with warnings
+     * @param reused the number of dialogues that were carried over from the previous reload because their file did not change
+     * @param parsed the number of dialogues that were (re)decoded from their file
+     * @param removed the number of dialogues from the previous reload that no longer exist
+     */
+    record LoadedDialogues(Map<Identifier, DialogueRegistry.Entry> dialogues, Map<Identifier, ValidationResult> validations, int reused, int parsed, int removed) { }
+
 }
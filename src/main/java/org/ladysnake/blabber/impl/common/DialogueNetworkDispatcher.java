@@ -0,0 +1,102 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.network.listener.ClientPlayPacketListener;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.network.packet.Packet;
+import net.minecraft.network.packet.s2c.play.BundleS2CPacket;
+import net.minecraft.server.network.ServerPlayerEntity;
+import org.ladysnake.blabber.impl.common.serialization.PacketCompression;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the dialogue payloads sent to players during a tick, and sends them all at the end of the tick.
+ *
+ * <p>Each player gets their payloads in the order they were queued, bundled together so that the client handles them all at once.
+ * Payloads that get {@linkplain #broadcast broadcast} are encoded once, and every recipient gets the same bytes.
+ *
+ * <p>Anything that changes which dialogue screen the client has open should {@linkplain #flush(ServerPlayerEntity) flush} the player's payloads first,
+ * as they refer to the dialogue that was open when they were queued.
+ */
+public final class DialogueNetworkDispatcher {
+    /**
+     * Clients refuse bundles with more packets than this
+     */
+    private static final int MAX_BUNDLE_SIZE = 4096;
+    private static final Map<ServerPlayerEntity, List<CustomPayload>> pendingPayloads = new LinkedHashMap<>();
+
+    public static void init() {
+        ServerTickEvents.END_SERVER_TICK.register(server -> flushAll());
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> pendingPayloads.remove(handler.getPlayer()));
+    }
+
+    public static void send(ServerPlayerEntity player, CustomPayload payload) {
+        pendingPayloads.computeIfAbsent(player, p -> new ArrayList<>()).add(payload);
+    }
+
+    public static <P extends CustomPayload & PacketCompression.Shareable<P>> void broadcast(Collection<ServerPlayerEntity> players, P payload) {
+        if (players.isEmpty()) return;
+        P shared = payload.preEncode();
+        for (ServerPlayerEntity player : players) {
+            send(player, shared);
+        }
+    }
+
+    /**
+     * Sends the payloads queued for the given player right away
+     */
+    public static void flush(ServerPlayerEntity player) {
+        List<CustomPayload> payloads = pendingPayloads.remove(player);
+        if (payloads != null) {
+            sendNow(player, payloads);
+        }
+    }
+
+    public static void flushAll() {
+        if (pendingPayloads.isEmpty()) return;
+        for (Map.Entry<ServerPlayerEntity, List<CustomPayload>> entry : pendingPayloads.entrySet()) {
+            sendNow(entry.getKey(), entry.getValue());
+        }
+        pendingPayloads.clear();
+    }
+
+    private static void sendNow(ServerPlayerEntity player, List<CustomPayload> payloads) {
+        if (payloads.size() == 1 || payloads.size() > MAX_BUNDLE_SIZE) {
+            for (CustomPayload payload : payloads) {
+                ServerPlayNetworking.send(player, payload);
+            }
+        } else {
+            List<Packet<? super ClientPlayPacketListener>> packets = new ArrayList<>(payloads.size());
+            for (CustomPayload payload : payloads) {
+                packets.add(ServerPlayNetworking.createS2CPacket(payload));
+            }
+            player.networkHandler.sendPacket(new BundleS2CPacket(packets));
+        }
+    }
+
+    private DialogueNetworkDispatcher() {}
+}
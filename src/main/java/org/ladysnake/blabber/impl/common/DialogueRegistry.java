@@ -17,10 +17,19 @@
  */
 package org.ladysnake.blabber.impl.common;
 
+import com.google.common.hash.HashCode;
+import net.minecraft.loot.condition.LootCondition;
+import net.minecraft.loot.context.LootContext;
 import net.minecraft.util.Identifier;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.ladysnake.blabber.impl.common.model.DialogueGraph;
 import org.ladysnake.blabber.impl.common.model.DialogueTemplate;
+import org.ladysnake.blabber.impl.common.packets.DialogueListDeltaPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueListPayload;
 
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -36,18 +45,75 @@ import java.util.Set;
  */
 
 public final class DialogueRegistry {
-    private static Set<Identifier> clientDialogueIds = Set.of();
-    private static Map<Identifier, DialogueTemplate> entries = Map.of();
+    private static Map<Identifier, Long> clientDialogues = Map.of();
+    private static int clientListVersion = -1;
+    // Written during reloads, read from the server thread, network threads and the configuration handler
+    private static volatile Map<Identifier, Entry> entries = Map.of();
+    private static volatile DialogueListPayload listPayload = DialogueListPayload.preEncoded(0, Map.of());
+    private static volatile @Nullable DialogueListDeltaPayload listDelta;
 
     public static Set<Identifier> getClientIds() {
-        return clientDialogueIds;
+        return clientDialogues.keySet();
+    }
+
+    /**
+     * @return the ids of every dialogue the server knows about, mapped to the hash of their definition
+     */
+    public static Map<Identifier, Long> getClientDialogues() {
+        return clientDialogues;
     }
 
     public static Set<Identifier> getIds() {
         return entries.keySet();
     }
 
+    /**
+     * @return the ids of every loaded dialogue, mapped to a truncated version of their {@linkplain Entry#contentHash() content hash}
+     */
+    public static Map<Identifier, Long> getContentHashes() {
+        return getContentHashes(entries);
+    }
+
+    private static Map<Identifier, Long> getContentHashes(Map<Identifier, Entry> entries) {
+        Map<Identifier, Long> hashes = new HashMap<>(entries.size());
+        entries.forEach((id, entry) -> hashes.put(id, entry.contentHash().asLong()));
+        return hashes;
+    }
+
+    /**
+     * @return a payload listing every loaded dialogue, encoded once for all the players it gets sent to
+     */
+    public static DialogueListPayload getListPayload() {
+        return listPayload;
+    }
+
+    /**
+     * @return the version of the {@linkplain #getListPayload() dialogue list}, which gets incremented every time its contents change
+     */
+    public static int getListVersion() {
+        return listPayload.version();
+    }
+
+    /**
+     * Encodes the dialogue list again, so that it follows the current compression settings
+     */
+    public static synchronized void refreshListPayload() {
+        listPayload = listPayload.preEncode();
+    }
+
+    /**
+     * @return the changes between the previous version of the {@linkplain #getListPayload() dialogue list} and the current one,
+     * or {@code null} if it never changed
+     */
+    public static @Nullable DialogueListDeltaPayload getListDelta() {
+        return listDelta;
+    }
+
     public static Optional<DialogueTemplate> getOrEmpty(Identifier id) {
+        return getEntry(id).map(Entry::template);
+    }
+
+    public static Optional<Entry> getEntry(Identifier id) {
         return Optional.ofNullable(entries.get(id));
     }
 
@@ -55,12 +121,50 @@ public final class DialogueRegistry {
         return getIds().contains(id);
     }
 
-    static void setEntries(Map<Identifier, DialogueTemplate> newEntries) {
+    static synchronized void setEntries(Map<Identifier, Entry> newEntries) {
         entries = newEntries;
+        Map<Identifier, Long> contentHashes = getContentHashes(newEntries);
+        if (!contentHashes.equals(listPayload.dialogues())) {
+            DialogueListPayload previous = listPayload;
+            listPayload = DialogueListPayload.preEncoded(previous.version() + 1, contentHashes);
+            listDelta = DialogueListDeltaPayload.between(previous, listPayload);
+        }
     }
 
     @ApiStatus.Internal // highly internal
-    public static void setClientIds(Set<Identifier> dialogueIds) {
-        clientDialogueIds = dialogueIds;
+    public static void setClientIds(int version, Map<Identifier, Long> dialogues) {
+        clientListVersion = version;
+        clientDialogues = dialogues;
+    }
+
+    /**
+     * @return {@code true} if the delta was applied, {@code false} if it is not based on the client's current version of the list
+     */
+    @ApiStatus.Internal // highly internal
+    public static boolean setClientIds(DialogueListDeltaPayload delta) {
+        if (delta.baseVersion() != clientListVersion) {
+            return false;
+        }
+        setClientIds(delta.version(), delta.applyTo(clientDialogues));
+        return true;
+    }
+
+    /**
+     * @param template the dialogue as it was defined in its data file
+     * @param graph the compiled structure of {@code template}
+     * @param contentHash a hash of the raw file content the dialogue was decoded from
+     * @param conditions the predicates of conditional choices, wrapped for use in a loot context and indexed by flat choice index -
+     *                   empty until they get resolved at the end of the reload, {@code null} for predicates that do not exist
+     * @param worldScopedConditions the flat indices of the conditions that only depend on the world, and can be shared between players
+     */
+    public record Entry(DialogueTemplate template, DialogueGraph graph, HashCode contentHash, LootContext.Entry<LootCondition>[] conditions, BitSet worldScopedConditions) {
+        @SuppressWarnings("unchecked")
+        public Entry(DialogueTemplate template, DialogueGraph graph, HashCode contentHash) {
+            this(template, graph, contentHash, new LootContext.Entry[0], new BitSet());
+        }
+
+        public Entry withConditions(LootContext.Entry<LootCondition>[] conditions, BitSet worldScopedConditions) {
+            return new Entry(this.template(), this.graph(), this.contentHash(), conditions, worldScopedConditions);
+        }
     }
 }
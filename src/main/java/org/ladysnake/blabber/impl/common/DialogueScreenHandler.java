@@ -36,13 +36,16 @@ import org.ladysnake.blabber.impl.common.machine.ChoiceResult;
 import org.ladysnake.blabber.impl.common.machine.DialogueStateMachine;
 import org.ladysnake.blabber.impl.common.model.StateType;
 import org.ladysnake.blabber.impl.common.packets.ChoiceAvailabilityPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueResyncPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueStatesPayload;
+import org.ladysnake.blabber.impl.common.packets.SelectedDialogueStatePayload;
 
 import java.util.List;
 import java.util.Map;
 
 public class DialogueScreenHandler extends ScreenHandler {
-    private final DialogueStateMachine dialogue;
-    private final @Nullable Entity interlocutor;
+    private DialogueStateMachine dialogue;
+    private @Nullable Entity interlocutor;
 
     public DialogueScreenHandler(int syncId, DialogueStateMachine dialogue, @Nullable Entity interlocutor) {
         this(BlabberRegistrar.DIALOGUE_SCREEN_HANDLER, syncId, dialogue, interlocutor);
@@ -59,6 +62,22 @@ public class DialogueScreenHandler extends ScreenHandler {
         return interlocutor;
     }
 
+    /**
+     * @return {@code true} if {@code dialogue} can be {@linkplain #swapDialogue swapped} into this screen handler,
+     * {@code false} if it requires a different screen
+     */
+    public boolean canSwapTo(DialogueStateMachine dialogue) {
+        return dialogue.getLayout().type() == this.dialogue.getLayout().type();
+    }
+
+    /**
+     * Replaces the dialogue displayed by this screen handler, keeping the screen itself open
+     */
+    public void swapDialogue(DialogueStateMachine dialogue, @Nullable Entity interlocutor) {
+        this.dialogue = dialogue;
+        this.interlocutor = interlocutor;
+    }
+
     @SuppressWarnings("unchecked")
     public DialogueLayout<DialogueLayout.Params> getLayout() {
         return (DialogueLayout<DialogueLayout.Params>) this.dialogue.getLayout();
@@ -88,8 +107,16 @@ public class DialogueScreenHandler extends ScreenHandler {
         return this.dialogue.getCurrentStateKey();
     }
 
-    public void setCurrentState(String key) {
-        this.dialogue.selectState(key);
+    public int getCurrentStateIndex() {
+        return this.dialogue.getCurrentStateIndex();
+    }
+
+    /**
+     * @return {@code true} if the client missed some updates, and should request a {@linkplain DialogueResyncPayload resync}
+     */
+    @CheckEnv(Env.CLIENT)
+    public boolean handleStateSelection(SelectedDialogueStatePayload packet) {
+        return this.dialogue.applyStateSelection(packet);
     }
 
     @Override
@@ -102,8 +129,36 @@ public class DialogueScreenHandler extends ScreenHandler {
         return true;
     }
 
-    public void handleAvailabilityUpdate(ChoiceAvailabilityPayload packet) {
-        this.dialogue.applyAvailabilityUpdate(packet);
+    /**
+     * @return {@code true} if the client missed some updates, and should request a {@linkplain DialogueResyncPayload resync}
+     */
+    @CheckEnv(Env.CLIENT)
+    public boolean handleAvailabilityUpdate(ChoiceAvailabilityPayload packet) {
+        return this.dialogue.applyAvailabilityUpdate(packet);
+    }
+
+    /**
+     * Sends the client the current state and a full availability snapshot, after it reported missing some updates
+     */
+    public void resync(ServerPlayerEntity player) {
+        DialogueNetworkDispatcher.send(player, this.dialogue.createStateSelectionPacket());
+        DialogueNetworkDispatcher.send(player, this.dialogue.createFullAvailabilityUpdatePacket());
+    }
+
+    public SelectedDialogueStatePayload createStateSelectionPacket() {
+        return this.dialogue.createStateSelectionPacket();
+    }
+
+    public void handleStatesUpdate(DialogueStatesPayload packet) {
+        this.dialogue.addStates(packet);
+    }
+
+    /**
+     * @return {@code false} if the client cannot make the given choice yet, because it is still waiting for the next state
+     */
+    @CheckEnv(Env.CLIENT)
+    public boolean isNextStateKnown(int choice) {
+        return this.dialogue.isNextStateKnown(choice);
     }
 
     @CheckEnv(Env.CLIENT)
@@ -113,12 +168,18 @@ public class DialogueScreenHandler extends ScreenHandler {
 
     public boolean makeChoice(ServerPlayerEntity player, int choice) {
         try {  // Can't throw here, could cause trouble with a bad packet
-            ChoiceResult result = this.dialogue.choose(choice);
+            DialogueStateMachine dialogue = this.dialogue;
+            ChoiceResult result = dialogue.choose(choice);
+
+            if (result.type() != StateType.END_DIALOGUE) {
+                // The client needs up-to-date states and availability to move on, and so do we to validate the next choice
+                PlayerDialogueTracker.get(player).onStateChanged();
+            }
 
             result.action().map(InstancedDialogueAction::action).ifPresent(action -> action.handle(player, this.interlocutor));
 
             // The action itself can close the dialogue or switch to a different one, so we need to check this one is still open
-            if (result.type() == StateType.END_DIALOGUE && player.currentScreenHandler == this) {
+            if (result.type() == StateType.END_DIALOGUE && player.currentScreenHandler == this && this.dialogue == dialogue) {
                 PlayerDialogueTracker.get(player).endDialogue();
             }
 
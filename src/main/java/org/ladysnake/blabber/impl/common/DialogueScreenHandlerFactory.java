@@ -17,6 +17,7 @@
  */
 package org.ladysnake.blabber.impl.common;
 
+import io.netty.buffer.Unpooled;
 import net.fabricmc.fabric.api.screenhandler.v1.ExtendedScreenHandlerFactory;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
@@ -24,12 +25,14 @@ import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.network.RegistryByteBuf;
 import net.minecraft.network.codec.PacketCodec;
 import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.registry.DynamicRegistryManager;
 import net.minecraft.screen.ScreenHandler;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
 import org.jetbrains.annotations.Nullable;
 import org.ladysnake.blabber.impl.common.machine.DialogueStateMachine;
 import org.ladysnake.blabber.impl.common.packets.ChoiceAvailabilityPayload;
+import org.ladysnake.blabber.impl.common.serialization.PacketCompression;
 
 import java.util.Optional;
 
@@ -37,11 +40,20 @@ public class DialogueScreenHandlerFactory implements ExtendedScreenHandlerFactor
     private final DialogueStateMachine dialogue;
     private final Text displayName;
     private final @Nullable Entity interlocutor;
+    private final @Nullable DialogueOpeningData openingData;
 
     public DialogueScreenHandlerFactory(DialogueStateMachine dialogue, Text displayName, @Nullable Entity interlocutor) {
+        this(dialogue, displayName, interlocutor, null);
+    }
+
+    /**
+     * @param openingData the data to send to the client when the screen opens, or {@code null} to create it from the current state of {@code dialogue}
+     */
+    public DialogueScreenHandlerFactory(DialogueStateMachine dialogue, Text displayName, @Nullable Entity interlocutor, @Nullable DialogueOpeningData openingData) {
         this.dialogue = dialogue;
         this.displayName = displayName;
         this.interlocutor = interlocutor;
+        this.openingData = openingData;
     }
 
     @Override
@@ -57,20 +69,41 @@ public class DialogueScreenHandlerFactory implements ExtendedScreenHandlerFactor
 
     @Override
     public DialogueOpeningData getScreenOpeningData(ServerPlayerEntity player) {
-        return new DialogueOpeningData(
-                this.dialogue,
-                Optional.ofNullable(this.interlocutor).map(Entity::getId),
-                this.dialogue.createFullAvailabilityUpdatePacket()
-        );
+        return this.openingData != null ? this.openingData : DialogueOpeningData.create(this.dialogue, this.interlocutor);
     }
 
+    /**
+     * @param preEncoded the bytes {@link #COMPRESSED_CODEC} writes for the other fields, or {@code null} to encode them on each send
+     */
     public record DialogueOpeningData(DialogueStateMachine dialogue, Optional<Integer> interlocutorId,
-                                      ChoiceAvailabilityPayload availableChoices) {
+                                      ChoiceAvailabilityPayload availableChoices, @Nullable PacketCompression.PreEncoded preEncoded) implements PacketCompression.PreEncodable {
         public static final PacketCodec<RegistryByteBuf, DialogueOpeningData> PACKET_CODEC = PacketCodec.tuple(
                 DialogueStateMachine.PACKET_CODEC, DialogueOpeningData::dialogue,
                 PacketCodecs.VAR_INT.collect(PacketCodecs::optional), DialogueOpeningData::interlocutorId,
                 ChoiceAvailabilityPayload.PACKET_CODEC, DialogueOpeningData::availableChoices,
                 DialogueOpeningData::new
         );
+        public static final PacketCompression.CompressedCodec<RegistryByteBuf, DialogueOpeningData> COMPRESSED_CODEC = PacketCompression.compressedWithRegistries("dialogue_opening", PACKET_CODEC);
+
+        public DialogueOpeningData(DialogueStateMachine dialogue, Optional<Integer> interlocutorId, ChoiceAvailabilityPayload availableChoices) {
+            this(dialogue, interlocutorId, availableChoices, null);
+        }
+
+        public static DialogueOpeningData create(DialogueStateMachine dialogue, @Nullable Entity interlocutor) {
+            return new DialogueOpeningData(
+                    dialogue,
+                    Optional.ofNullable(interlocutor).map(Entity::getId),
+                    dialogue.createFullAvailabilityUpdatePacket()
+            );
+        }
+
+        /**
+         * Encodes and compresses this data right away, so that it can be sent again without serializing the dialogue as long as it does not change
+         */
+        public DialogueOpeningData preEncode(DynamicRegistryManager registries) {
+            if (this.preEncoded != null && this.preEncoded.isCurrent()) return this;
+            PacketCompression.PreEncoded preEncoded = COMPRESSED_CODEC.preEncode(new RegistryByteBuf(Unpooled.buffer(), registries), this);
+            return new DialogueOpeningData(this.dialogue, this.interlocutorId, this.availableChoices, preEncoded);
+        }
     }
 }
@@ -0,0 +1,140 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import org.ladysnake.blabber.impl.common.machine.WorldConditionResults;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Owns the dialogue sessions of every player on the server, and ticks them all at once.
+ *
+ * <p>Trackers get added when they start or load a dialogue, and removed on the first tick they no longer have one,
+ * so players who are not talking to anyone cost nothing.
+ * Conditions that only depend on the world get tested once per world and per tick, and their results are shared by every session.
+ */
+public final class DialogueSessionManager {
+    private static final Set<PlayerDialogueTracker> activeTrackers = new ReferenceLinkedOpenHashSet<>();
+    private static final Map<ServerWorld, WorldConditionResults> worldConditionResults = new Reference2ObjectOpenHashMap<>();
+    private static int currentTick;
+    private static long ticks;
+    private static long tickNanos;
+    private static long maxTickNanos;
+
+    public static void init() {
+        // Ticking at the start of the tick lets the dispatcher send everything trackers queue in the same tick
+        ServerTickEvents.START_SERVER_TICK.register(server -> tick());
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            activeTrackers.clear();
+            worldConditionResults.clear();
+            resetStats();
+        });
+    }
+
+    static void activate(PlayerDialogueTracker tracker) {
+        activeTrackers.add(tracker);
+    }
+
+    /**
+     * @return the results of world-scoped conditions in {@code world} for the current tick
+     */
+    static WorldConditionResults getWorldConditionResults(ServerWorld world) {
+        return worldConditionResults.computeIfAbsent(world, WorldConditionResults::new).startTick(currentTick);
+    }
+
+    private static void tick() {
+        // The world may have changed since the last tick, so world-scoped conditions need testing again
+        currentTick++;
+        if (activeTrackers.isEmpty()) return;
+        long start = System.nanoTime();
+        // Ticking can start dialogues for other players, so iterate over a copy
+        for (PlayerDialogueTracker tracker : activeTrackers.toArray(new PlayerDialogueTracker[0])) {
+            if (tracker.isActive()) {
+                tracker.serverTick();
+            }
+            if (!tracker.isActive()) {
+                activeTrackers.remove(tracker);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        ticks++;
+        tickNanos += elapsed;
+        maxTickNanos = Math.max(maxTickNanos, elapsed);
+    }
+
+    /**
+     * @return how many players are currently in each dialogue, sorted by dialogue id
+     */
+    public static Map<Identifier, Integer> getSessionCounts() {
+        Object2IntMap<Identifier> counts = new Object2IntOpenHashMap<>();
+        for (PlayerDialogueTracker tracker : activeTrackers) {
+            tracker.getCurrentDialogue().ifPresent(dialogue -> counts.mergeInt(dialogue.getId(), 1, Integer::sum));
+        }
+        return new TreeMap<>(counts);
+    }
+
+    /**
+     * @return how many players are about to resume a dialogue they were in when they last left
+     */
+    public static int getPendingSessionCount() {
+        int pending = 0;
+        for (PlayerDialogueTracker tracker : activeTrackers) {
+            if (tracker.getCurrentDialogue().isEmpty()) pending++;
+        }
+        return pending;
+    }
+
+    /**
+     * @return how many ticks had at least one session to tick, since the last reset
+     */
+    public static long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return the total time spent ticking sessions since the last reset, in nanoseconds
+     */
+    public static long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * @return the longest time spent ticking sessions in a single tick since the last reset, in nanoseconds
+     */
+    public static long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    public static void resetStats() {
+        ticks = 0;
+        tickNanos = 0;
+        maxTickNanos = 0;
+    }
+
+    private DialogueSessionManager() {}
+}
@@ -0,0 +1,90 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.Identifier;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded, least-recently-used cache of dialogue templates, keyed by dialogue id and content hash.
+ *
+ * <p>The client keeps the unparsed templates it has received, so that reopening the same dialogue only requires
+ * sending the texts that were parsed for the player. The server keeps a mirror of each client's cache,
+ * which only tracks keys: as long as both sides apply the same operations in the same order, the server knows
+ * exactly which templates it does not need to send again.
+ */
+public final class DialogueTemplateCache<T> {
+    public static final int CAPACITY = 32;
+
+    private static final DialogueTemplateCache<DialogueRegistry.Entry> clientCache = new DialogueTemplateCache<>();
+    private static final Map<UUID, DialogueTemplateCache<Boolean>> clientCacheMirrors = new ConcurrentHashMap<>();
+
+    public static DialogueTemplateCache<DialogueRegistry.Entry> getClientCache() {
+        return clientCache;
+    }
+
+    public static DialogueTemplateCache<Boolean> getClientCacheMirror(ServerPlayerEntity player) {
+        return clientCacheMirrors.computeIfAbsent(player.getUuid(), uuid -> new DialogueTemplateCache<>());
+    }
+
+    /**
+     * Forgets about a player's cache, typically when their client starts a new connection and clears it
+     */
+    public static void removeClientCacheMirror(UUID playerUuid) {
+        clientCacheMirrors.remove(playerUuid);
+    }
+
+    private final Object2ObjectLinkedOpenHashMap<Identifier, Slot<T>> entries = new Object2ObjectLinkedOpenHashMap<>();
+
+    /**
+     * @return the cached value for the given dialogue, or {@code null} if it is absent or outdated
+     */
+    public synchronized @Nullable T get(Identifier id, long contentHash) {
+        Slot<T> slot = this.entries.getAndMoveToLast(id);
+        return slot != null && slot.contentHash() == contentHash ? slot.value() : null;
+    }
+
+    public synchronized void put(Identifier id, long contentHash, T value) {
+        this.entries.putAndMoveToLast(id, new Slot<>(contentHash, value));
+        if (this.entries.size() > CAPACITY) {
+            this.entries.removeFirst();
+        }
+    }
+
+    /**
+     * Evicts every template that is not part of the given dialogue list, typically after a datapack reload
+     */
+    public synchronized void retainAll(Map<Identifier, Long> contentHashes) {
+        this.entries.object2ObjectEntrySet().removeIf(e -> {
+            Long hash = contentHashes.get(e.getKey());
+            return hash == null || hash != e.getValue().contentHash();
+        });
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    private record Slot<T>(long contentHash, T value) { }
+}
@@ -19,40 +19,89 @@ package org.ladysnake.blabber.impl.common;
 
 import com.google.common.base.Preconditions;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.loot.context.LootContext;
+import net.minecraft.loot.context.LootContextParameter;
 import net.minecraft.loot.context.LootContextParameterSet;
 import net.minecraft.loot.context.LootContextParameters;
-import net.minecraft.loot.context.LootContextTypes;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
 import net.minecraft.registry.RegistryWrapper;
 import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.Text;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.GameRules;
 import org.jetbrains.annotations.Nullable;
 import org.ladysnake.blabber.Blabber;
 import org.ladysnake.blabber.impl.common.actions.CommandDialogueAction;
 import org.ladysnake.blabber.impl.common.machine.DialogueStateMachine;
+import org.ladysnake.blabber.impl.common.machine.StateParser;
+import org.ladysnake.blabber.impl.common.model.DialogueGraph;
 import org.ladysnake.blabber.impl.common.model.DialogueTemplate;
 import org.ladysnake.blabber.impl.common.packets.ChoiceAvailabilityPayload;
+import org.ladysnake.blabber.impl.common.packets.CompactTemplatesPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueStatesPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueSwapPayload;
+import org.ladysnake.blabber.impl.common.settings.BlabberGameRules;
+import org.ladysnake.cca.api.v3.component.Component;
 import org.ladysnake.cca.api.v3.component.ComponentKey;
 import org.ladysnake.cca.api.v3.component.ComponentRegistry;
-import org.ladysnake.cca.api.v3.component.tick.ServerTickingComponent;
 
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 
-public final class PlayerDialogueTracker implements ServerTickingComponent {
+/**
+ * Tracks the dialogue a player is in. Only ticked by the {@link DialogueSessionManager} while there is one.
+ */
+public final class PlayerDialogueTracker implements Component {
     public static final ComponentKey<PlayerDialogueTracker> KEY = ComponentRegistry.getOrCreate(Blabber.id("dialogue_tracker"), PlayerDialogueTracker.class);
+    /**
+     * Incremented whenever a score changes on the server, as any of them may be used in a predicate
+     */
+    private static int scoreboardVersion;
+    /**
+     * The longest a player has to wait before an unskippable dialogue gets reopened, in ticks
+     */
+    private static final int MAX_REOPEN_DELAY = 100;
+    /**
+     * How long an unskippable dialogue needs to stay open for its screen getting closed not to count as a repeated offense, in ticks
+     */
+    private static final int REOPEN_STREAK_RESET_TICKS = 200;
+    private static long forcedReopens;
+    private static long throttledReopens;
 
     private final PlayerEntity player;
     private @Nullable DialogueStateMachine currentDialogue;
     private @Nullable Entity interlocutor;
     private @Nullable DeserializedState deserializedState;
     private int resumptionAttempts = 0;
+    /**
+     * The state in which conditions were last evaluated, to re-evaluate them as soon as the player moves on
+     */
+    private int lastEvaluatedState = DialogueGraph.NO_STATE;
+    // Snapshot of what conditions were last evaluated against, when they are event-driven
+    private boolean conditionsInvalidated;
+    private int lastInventoryChangeCount;
+    private float lastHealth;
+    private int lastScoreboardVersion;
+    private @Nullable Vec3d lastInterlocutorPos;
+    private @Nullable LootContext conditionContext;
+    /**
+     * The parameters backing {@link #conditionContext}, updated in place whenever it gets reused
+     */
+    private final Map<LootContextParameter<?>, Object> conditionParameters = new Reference2ObjectOpenHashMap<>();
+    private @Nullable CachedOpening cachedOpening;
+    // Backoff for reopening unskippable dialogues
+    private int reopenStreak;
+    private int lastForcedReopenTick;
+    private int nextForcedReopenTick;
 
     public PlayerDialogueTracker(PlayerEntity player) {
         this.player = player;
@@ -62,25 +111,62 @@ public final class PlayerDialogueTracker implements ServerTickingComponent {
         return KEY.get(player);
     }
 
+    public static void onScoreboardUpdate() {
+        scoreboardVersion++;
+    }
+
+    /**
+     * @return how many times an unskippable dialogue got reopened after its screen was closed, since the last reset
+     */
+    public static long getForcedReopens() {
+        return forcedReopens;
+    }
+
+    /**
+     * @return how many ticks unskippable dialogues stayed closed because they were being reopened too often, since the last reset
+     */
+    public static long getThrottledReopens() {
+        return throttledReopens;
+    }
+
+    public static void resetReopenStats() {
+        forcedReopens = 0;
+        throttledReopens = 0;
+    }
+
     public void startDialogue(Identifier id, @Nullable Entity interlocutor) throws CommandSyntaxException {
-        DialogueTemplate template = DialogueRegistry.getOrEmpty(id)
+        DialogueRegistry.Entry dialogue = DialogueRegistry.getEntry(id)
                 .orElseThrow(() -> new IllegalArgumentException("Unknown dialogue " + id));
         DialogueStateMachine currentDialogue = this.startDialogue0(
                 id,
-                template,
-                template.start(),
+                dialogue,
+                dialogue.template().start(),
                 interlocutor
         );
         currentDialogue.getStartAction().ifPresent(a -> a.action().handle((ServerPlayerEntity) this.player, interlocutor));
     }
 
-    private DialogueStateMachine startDialogue0(Identifier id, DialogueTemplate template, @Nullable String start, @Nullable Entity interlocutor) throws CommandSyntaxException {
+    private DialogueStateMachine startDialogue0(Identifier id, DialogueRegistry.Entry dialogue, String start, @Nullable Entity interlocutor) throws CommandSyntaxException {
         ServerPlayerEntity serverPlayer = ((ServerPlayerEntity) this.player);
+        int startState = dialogue.graph().getStateIndex(start);
+        if (startState == DialogueGraph.NO_STATE) {
+            throw new IllegalArgumentException(start + " is not an available dialogue state");
+        }
         this.interlocutor = interlocutor;
         try {
-            DialogueTemplate parsedTemplate = template.parseText(CommandDialogueAction.getSource(serverPlayer), serverPlayer);
-            this.currentDialogue = new DialogueStateMachine(id, parsedTemplate, start);
-            this.updateConditions(serverPlayer, this.currentDialogue);
+            GameRules gameRules = serverPlayer.getServerWorld().getGameRules();
+            boolean incrementalSync = gameRules.getBoolean(BlabberGameRules.INCREMENTAL_DIALOGUE_SYNC);
+            if (gameRules.getBoolean(BlabberGameRules.LAZY_DIALOGUE_TEXT)) {
+                DialogueTemplate template = dialogue.template().withParsedIllustrations(CommandDialogueAction.getSource(serverPlayer), serverPlayer, dialogue.graph());
+                StateParser parser = state -> state.parseText(CommandDialogueAction.getSource(serverPlayer), serverPlayer);
+                this.currentDialogue = new DialogueStateMachine(id, template, dialogue.graph(), dialogue.conditions(), dialogue.worldScopedConditions(), startState, parser, incrementalSync);
+            } else {
+                DialogueTemplate parsedTemplate = dialogue.template().parseText(CommandDialogueAction.getSource(serverPlayer), serverPlayer, dialogue.graph());
+                this.currentDialogue = new DialogueStateMachine(id, parsedTemplate, dialogue.graph(), dialogue.conditions(), dialogue.worldScopedConditions(), startState, null, incrementalSync);
+            }
+            DialogueSessionManager.activate(this);
+            this.updateConditions(serverPlayer, this.currentDialogue, false);
+            this.lastEvaluatedState = startState;
             this.openDialogueScreen();
             return this.currentDialogue;
         } catch (CommandSyntaxException e) {
@@ -92,12 +178,23 @@ public final class PlayerDialogueTracker implements ServerTickingComponent {
     public void endDialogue() {
         this.currentDialogue = null;
         this.interlocutor = null;
+        this.cachedOpening = null;
 
-        if (this.player instanceof ServerPlayerEntity sp && this.player.currentScreenHandler instanceof DialogueScreenHandler) {
-            sp.closeHandledScreen();
+        if (this.player instanceof ServerPlayerEntity sp) {
+            DialogueNetworkDispatcher.flush(sp);
+            if (this.player.currentScreenHandler instanceof DialogueScreenHandler) {
+                sp.closeHandledScreen();
+            }
         }
     }
 
+    /**
+     * Forces choice conditions to be re-evaluated on the next tick
+     */
+    public void invalidateConditions() {
+        this.conditionsInvalidated = true;
+    }
+
     public Optional<DialogueStateMachine> getCurrentDialogue() {
         return Optional.ofNullable(this.currentDialogue);
     }
@@ -110,15 +207,20 @@ public final class PlayerDialogueTracker implements ServerTickingComponent {
         DialogueStateMachine oldDialogue = this.currentDialogue;
         Entity oldInterlocutor = this.interlocutor;
         if (oldDialogue != null) {
-            this.endDialogue();
-
-            DialogueRegistry.getOrEmpty(oldDialogue.getId())
-                    .ifPresent(template -> this.tryResumeDialogue(
-                            oldDialogue.getId(),
-                            template,
-                            oldDialogue.getCurrentStateKey(),
-                            oldInterlocutor
-                    ));
+            try {
+                // Resuming swaps the updated dialogue into the screen that is already open, if it can
+                DialogueRegistry.getEntry(oldDialogue.getId())
+                        .ifPresent(dialogue -> this.tryResumeDialogue(
+                                oldDialogue.getId(),
+                                dialogue,
+                                oldDialogue.getCurrentStateKey(),
+                                oldInterlocutor
+                        ));
+            } finally {
+                if (this.currentDialogue == oldDialogue) {
+                    this.endDialogue();
+                }
+            }
         }
     }
 
@@ -127,11 +229,14 @@ public final class PlayerDialogueTracker implements ServerTickingComponent {
         if (tag.contains("current_dialogue_id", NbtElement.STRING_TYPE)) {
             Identifier dialogueId = Identifier.tryParse(tag.getString("current_dialogue_id"));
             if (dialogueId != null) {
-                Optional<DialogueTemplate> dialogueTemplate = DialogueRegistry.getOrEmpty(dialogueId);
-                if (dialogueTemplate.isPresent()) {
+                Optional<DialogueRegistry.Entry> dialogue = DialogueRegistry.getEntry(dialogueId);
+                if (dialogue.isPresent()) {
                     UUID interlocutorUuid = tag.containsUuid("interlocutor") ? tag.getUuid("interlocutor") : null;
                     String selectedState = tag.contains("current_dialogue_state", NbtElement.STRING_TYPE) ? tag.getString("current_dialogue_state") : null;
-                    this.deserializedState = new DeserializedState(dialogueId, dialogueTemplate.get(), selectedState, interlocutorUuid);
+                    this.deserializedState = new DeserializedState(dialogueId, dialogue.get(), selectedState, interlocutorUuid);
+                    if (this.player instanceof ServerPlayerEntity) {
+                        DialogueSessionManager.activate(this);
+                    }
                 }
             }
         }
@@ -148,8 +253,17 @@ public final class PlayerDialogueTracker implements ServerTickingComponent {
         }
     }
 
-    @Override
-    public void serverTick() {
+    /**
+     * @return {@code true} if this tracker has a dialogue to tick, either open or waiting to be resumed
+     */
+    boolean isActive() {
+        return (this.currentDialogue != null || this.deserializedState != null) && !this.player.isRemoved();
+    }
+
+    /**
+     * Resumes a saved dialogue, keeps the current one's screen open, and refreshes choice conditions when they are due
+     */
+    void serverTick() {
         DeserializedState saved = this.deserializedState;
         ServerPlayerEntity serverPlayer = (ServerPlayerEntity) this.player;
         if (saved != null) {
@@ -161,7 +275,7 @@ public final class PlayerDialogueTracker implements ServerTickingComponent {
                 } else {
                     interlocutor = null;
                 }
-                tryResumeDialogue(saved.dialogueId(), saved.template(), saved.selectedState(), interlocutor);
+                tryResumeDialogue(saved.dialogueId(), saved.dialogue(), saved.selectedState(), interlocutor);
             }
             this.resumptionAttempts = 0;
             this.deserializedState = null;
@@ -170,49 +284,207 @@ public final class PlayerDialogueTracker implements ServerTickingComponent {
         if (this.currentDialogue != null) {
             if (this.player.currentScreenHandler == this.player.playerScreenHandler) {
                 if (this.currentDialogue.isUnskippable()) {
-                    this.openDialogueScreen();
+                    if (!this.tryForceReopen(serverPlayer)) return;
                 } else {
                     this.endDialogue();
                     return;
                 }
             }
 
-            try {
-                ChoiceAvailabilityPayload update = this.updateConditions(serverPlayer, this.currentDialogue);
+            int currentState = this.currentDialogue.getCurrentStateIndex();
+            boolean eventDriven = serverPlayer.getServerWorld().getGameRules().getBoolean(BlabberGameRules.EVENT_DRIVEN_CONDITIONS);
+            if (currentState != this.lastEvaluatedState || (eventDriven ? this.pollConditionInvalidation(serverPlayer) : this.isConditionTick(serverPlayer))) {
+                this.refreshConditions();
+            } else if (eventDriven && this.currentDialogue.hasWorldScopedConditions() && this.isConditionTick(serverPlayer)) {
+                // Time and weather do not trigger any event, but world-scoped conditions are shared between players and cheap to poll
+                this.sendConditionUpdate(serverPlayer, this.updateConditions(serverPlayer, this.currentDialogue, true));
+            }
+        }
+    }
 
-                if (update != null) {
-                    ServerPlayNetworking.send(serverPlayer, update);
-                }
-            } catch (CommandSyntaxException e) {
-                throw new IllegalStateException("Error while updating dialogue conditions", e);
+    /**
+     * Sends the client what it needs to display the player's new state right away
+     */
+    public void onStateChanged() {
+        if (this.currentDialogue != null && this.player instanceof ServerPlayerEntity serverPlayer) {
+            DialogueStatesPayload newStates = this.currentDialogue.syncStates();
+            if (newStates != null) {
+                DialogueNetworkDispatcher.send(serverPlayer, newStates);
             }
+            this.refreshConditions();
+        }
+    }
+
+    /**
+     * Re-evaluates choice conditions right away and sends the changes to the player, e.g. after they moved to another state
+     */
+    public void refreshConditions() {
+        if (this.currentDialogue != null && this.player instanceof ServerPlayerEntity serverPlayer) {
+            this.lastEvaluatedState = this.currentDialogue.getCurrentStateIndex();
+            this.sendConditionUpdate(serverPlayer, this.updateConditions(serverPlayer, this.currentDialogue, false));
+        }
+    }
+
+    private void sendConditionUpdate(ServerPlayerEntity player, @Nullable ChoiceAvailabilityPayload update) {
+        if (update != null) {
+            DialogueNetworkDispatcher.send(player, update);
+        }
+    }
+
+    /**
+     * @return {@code true} if something changed that may affect the result of choice conditions since the last call
+     */
+    private boolean pollConditionInvalidation(ServerPlayerEntity player) {
+        boolean invalidated = this.conditionsInvalidated;
+        this.conditionsInvalidated = false;
+
+        int inventoryChangeCount = player.getInventory().getChangeCount();
+        if (inventoryChangeCount != this.lastInventoryChangeCount) {
+            this.lastInventoryChangeCount = inventoryChangeCount;
+            invalidated = true;
+        }
+        float health = player.getHealth();
+        if (health != this.lastHealth) {
+            this.lastHealth = health;
+            invalidated = true;
+        }
+        if (scoreboardVersion != this.lastScoreboardVersion) {
+            this.lastScoreboardVersion = scoreboardVersion;
+            invalidated = true;
+        }
+        Vec3d interlocutorPos = this.interlocutor == null ? null : this.interlocutor.getPos();
+        if (!Objects.equals(interlocutorPos, this.lastInterlocutorPos)) {
+            this.lastInterlocutorPos = interlocutorPos;
+            invalidated = true;
+        }
+        return invalidated;
+    }
+
+    /**
+     * Reopens an unskippable dialogue after its screen got closed, unless that keeps happening,
+     * in which case the dialogue gets reopened less and less often to avoid re-sending it every tick.
+     *
+     * @return {@code true} if the dialogue got reopened
+     */
+    private boolean tryForceReopen(ServerPlayerEntity player) {
+        int now = player.server.getTicks();
+        if (now < this.nextForcedReopenTick) {
+            throttledReopens++;
+            return false;
+        }
+        if (now - this.lastForcedReopenTick > REOPEN_STREAK_RESET_TICKS) {
+            this.reopenStreak = 0;
         }
+        this.lastForcedReopenTick = now;
+        this.nextForcedReopenTick = now + Math.min(MAX_REOPEN_DELAY, 1 << Math.min(this.reopenStreak++, 7));
+        forcedReopens++;
+        this.openDialogueScreen();
+        return true;
     }
 
-    private void tryResumeDialogue(Identifier id, DialogueTemplate template, String selectedState, Entity interlocutor) {
+    private boolean isConditionTick(ServerPlayerEntity player) {
+        int interval = player.getServerWorld().getGameRules().getInt(BlabberGameRules.CONDITION_INTERVAL);
+        // Offset by the entity id, so that players do not all get evaluated on the same tick
+        return interval <= 1 || Math.floorMod(player.server.getTicks() + player.getId(), interval) == 0;
+    }
+
+    private void tryResumeDialogue(Identifier id, DialogueRegistry.Entry dialogue, @Nullable String selectedState, @Nullable Entity interlocutor) {
         try {
-            this.startDialogue0(id, template, selectedState, interlocutor);
+            this.startDialogue0(id, dialogue, selectedState == null ? dialogue.template().start() : selectedState, interlocutor);
         } catch (CommandSyntaxException e) {
             Blabber.LOGGER.error("(Blabber) Failed to load dialogue template {}", id, e);
         }
     }
 
-    private @Nullable ChoiceAvailabilityPayload updateConditions(ServerPlayerEntity player, DialogueStateMachine currentDialogue) throws CommandSyntaxException {
+    /**
+     * @param worldScopedOnly {@code true} to skip the conditions that need to be tested for each player
+     */
+    private @Nullable ChoiceAvailabilityPayload updateConditions(ServerPlayerEntity player, DialogueStateMachine currentDialogue, boolean worldScopedOnly) {
         if (currentDialogue.hasConditions()) {
-            return currentDialogue.updateConditions(new LootContext.Builder(
-                    new LootContextParameterSet.Builder(player.getServerWorld())
-                            .add(LootContextParameters.ORIGIN, player.getPos())
-                            .addOptional(LootContextParameters.THIS_ENTITY, player)
-                            .build(LootContextTypes.COMMAND)
-            ).build(Optional.empty()));
+            return currentDialogue.updateConditions(
+                    worldScopedOnly ? null : this.getConditionContext(player),
+                    DialogueSessionManager.getWorldConditionResults(player.getServerWorld()),
+                    player.getServerWorld().getGameRules().get(BlabberGameRules.CONDITION_SCOPE).get()
+            );
         }
         return null;
     }
 
+    /**
+     * Loot contexts only read their parameters from a map, so the same context can be reused for as long as the player stays in the same world,
+     * with its origin updated in place instead of allocating a new context every time the player moves.
+     */
+    private LootContext getConditionContext(ServerPlayerEntity player) {
+        ServerWorld world = player.getServerWorld();
+        if (this.conditionContext == null || this.conditionContext.getWorld() != world) {
+            this.conditionParameters.clear();
+            this.conditionParameters.put(LootContextParameters.THIS_ENTITY, player);
+            // Same parameters as LootContextTypes.COMMAND, which the builder would check them against
+            this.conditionContext = new LootContext.Builder(new LootContextParameterSet(world, this.conditionParameters, Map.of(), 0f)).build(Optional.empty());
+        }
+        this.conditionParameters.put(LootContextParameters.ORIGIN, player.getPos());
+        return this.conditionContext;
+    }
+
     private void openDialogueScreen() {
         Preconditions.checkState(this.currentDialogue != null);
-        this.player.openHandledScreen(new DialogueScreenHandlerFactory(this.currentDialogue, Text.of("Blabber Dialogue Screen"), this.interlocutor));
+        this.currentDialogue.resetSyncedStates();
+        this.currentDialogue.setCachedTemplate(this.findCachedTemplate(this.currentDialogue));
+        this.currentDialogue.setCompactTemplates(this.player instanceof ServerPlayerEntity sp && ServerPlayNetworking.canSend(sp, CompactTemplatesPayload.ID));
+        if (this.player instanceof ServerPlayerEntity sp) {
+            // Updates queued for the previous screen must reach the client before it gets replaced
+            DialogueNetworkDispatcher.flush(sp);
+            if (sp.currentScreenHandler instanceof DialogueScreenHandler handler && handler.canSwapTo(this.currentDialogue) && ServerPlayNetworking.canSend(sp, DialogueSwapPayload.ID)) {
+                handler.swapDialogue(this.currentDialogue, this.interlocutor);
+                ServerPlayNetworking.send(sp, new DialogueSwapPayload(handler.syncId, this.getOpeningData(sp, this.currentDialogue)));
+                return;
+            }
+            this.player.openHandledScreen(new DialogueScreenHandlerFactory(this.currentDialogue, Text.of("Blabber Dialogue Screen"), this.interlocutor, this.getOpeningData(sp, this.currentDialogue)));
+        } else {
+            this.player.openHandledScreen(new DialogueScreenHandlerFactory(this.currentDialogue, Text.of("Blabber Dialogue Screen"), this.interlocutor));
+        }
     }
 
-    private record DeserializedState(Identifier dialogueId, DialogueTemplate template, String selectedState, @Nullable UUID interlocutorUuid) { }
+    /**
+     * Reuses the encoded and compressed opening data from the last time this dialogue was opened, as long as the client would not be able to tell the difference
+     */
+    private DialogueScreenHandlerFactory.DialogueOpeningData getOpeningData(ServerPlayerEntity player, DialogueStateMachine dialogue) {
+        CachedOpening cached = this.cachedOpening;
+        if (cached != null
+                && cached.dialogue() == dialogue
+                && cached.interlocutor() == this.interlocutor
+                && cached.state() == dialogue.getCurrentStateIndex()
+                && cached.syncSequence() == dialogue.getSyncSequence()
+                // Referencing a template the client has since evicted from its cache would prevent it from decoding the dialogue
+                && (!cached.reliesOnClientCache() || dialogue.reliesOnClientCache())
+                // Bytes compressed with outdated settings would get encoded all over again on every send
+                && cached.data().preEncoded() != null && cached.data().preEncoded().isCurrent()) {
+            return cached.data();
+        }
+        DialogueScreenHandlerFactory.DialogueOpeningData data = DialogueScreenHandlerFactory.DialogueOpeningData.create(dialogue, this.interlocutor).preEncode(player.getRegistryManager());
+        this.cachedOpening = new CachedOpening(dialogue, this.interlocutor, dialogue.getCurrentStateIndex(), dialogue.getSyncSequence(), dialogue.reliesOnClientCache(), data);
+        return data;
+    }
+
+    /**
+     * Checks whether the player's client already has the unparsed template of a dialogue, and assumes it will once it gets opened
+     */
+    private DialogueStateMachine.@Nullable CachedTemplate findCachedTemplate(DialogueStateMachine dialogue) {
+        if (dialogue.isSyncedIncrementally() || !(this.player instanceof ServerPlayerEntity serverPlayer)) return null;
+        DialogueRegistry.Entry entry = DialogueRegistry.getEntry(dialogue.getId()).orElse(null);
+        // The dialogue may have been started before a reload, in which case the client does not know about its template
+        if (entry == null || entry.graph() != dialogue.getGraph()) return null;
+        long contentHash = entry.contentHash().asLong();
+        DialogueTemplateCache<Boolean> clientCache = DialogueTemplateCache.getClientCacheMirror(serverPlayer);
+        boolean knownByClient = clientCache.get(dialogue.getId(), contentHash) != null;
+        if (!knownByClient) {
+            clientCache.put(dialogue.getId(), contentHash, Boolean.TRUE);
+        }
+        return new DialogueStateMachine.CachedTemplate(contentHash, entry.template(), knownByClient);
+    }
+
+    private record CachedOpening(DialogueStateMachine dialogue, @Nullable Entity interlocutor, int state, int syncSequence, boolean reliesOnClientCache,
+                                 DialogueScreenHandlerFactory.DialogueOpeningData data) { }
+
+    private record DeserializedState(Identifier dialogueId, DialogueRegistry.Entry dialogue, @Nullable String selectedState, @Nullable UUID interlocutorUuid) { }
 }
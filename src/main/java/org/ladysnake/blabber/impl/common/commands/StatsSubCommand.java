@@ -0,0 +1,108 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.commands;
+
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
+import net.minecraft.util.Identifier;
+import org.ladysnake.blabber.impl.common.DialogueSessionManager;
+import org.ladysnake.blabber.impl.common.PlayerDialogueTracker;
+import org.ladysnake.blabber.impl.common.serialization.PacketCompression;
+
+import java.util.Map;
+
+import static net.minecraft.server.command.CommandManager.literal;
+
+public final class StatsSubCommand {
+    public static final String STATS_SUBCOMMAND = "stats";
+    public static final String STATS_NETWORK_SUBCOMMAND = "network";
+    public static final String STATS_REOPENS_SUBCOMMAND = "reopens";
+    public static final String STATS_SESSIONS_SUBCOMMAND = "sessions";
+    public static final String STATS_RESET_SUBCOMMAND = "reset";
+
+    static LiteralArgumentBuilder<ServerCommandSource> statsSubtree() {
+        return literal(STATS_SUBCOMMAND)
+                .requires(SettingsSubCommand.ALLOW_DEBUG)
+                .then(literal(STATS_NETWORK_SUBCOMMAND)
+                        .executes(context -> showNetworkStats(context.getSource()))
+                        .then(literal(STATS_RESET_SUBCOMMAND).executes(context -> resetNetworkStats(context.getSource())))
+                ).then(literal(STATS_REOPENS_SUBCOMMAND)
+                        .executes(context -> showReopenStats(context.getSource()))
+                        .then(literal(STATS_RESET_SUBCOMMAND).executes(context -> resetReopenStats(context.getSource())))
+                ).then(literal(STATS_SESSIONS_SUBCOMMAND)
+                        .executes(context -> showSessionStats(context.getSource()))
+                        .then(literal(STATS_RESET_SUBCOMMAND).executes(context -> resetSessionStats(context.getSource())))
+                );
+    }
+
+    private static int showNetworkStats(ServerCommandSource source) {
+        int count = 0;
+        for (Map.Entry<String, PacketCompression.Stats> entry : PacketCompression.getStats().entrySet()) {
+            PacketCompression.Stats stats = entry.getValue();
+            if (stats.count() > 0) {
+                source.sendFeedback(() -> Text.translatable("blabber:commands.network_stats.entry", entry.getKey(), stats.count(), stats.uncompressedBytes(), stats.sentBytes()), false);
+                count++;
+            }
+        }
+        if (count == 0) {
+            source.sendFeedback(() -> Text.translatable("blabber:commands.network_stats.empty"), false);
+        }
+        return count;
+    }
+
+    private static int resetNetworkStats(ServerCommandSource source) {
+        PacketCompression.resetStats();
+        source.sendFeedback(() -> Text.translatable("blabber:commands.network_stats.reset"), false);
+        return 1;
+    }
+
+    private static int showReopenStats(ServerCommandSource source) {
+        long forcedReopens = PlayerDialogueTracker.getForcedReopens();
+        long throttledReopens = PlayerDialogueTracker.getThrottledReopens();
+        source.sendFeedback(() -> Text.translatable("blabber:commands.reopen_stats", forcedReopens, throttledReopens), false);
+        return (int) Math.min(forcedReopens, Integer.MAX_VALUE);
+    }
+
+    private static int showSessionStats(ServerCommandSource source) {
+        Map<Identifier, Integer> sessionCounts = DialogueSessionManager.getSessionCounts();
+        int sessions = sessionCounts.values().stream().mapToInt(Integer::intValue).sum();
+        int pending = DialogueSessionManager.getPendingSessionCount();
+        long ticks = DialogueSessionManager.getTicks();
+        // Microseconds are more readable than nanoseconds, and precise enough
+        long averageMicros = ticks == 0 ? 0 : DialogueSessionManager.getTickNanos() / ticks / 1000;
+        long maxMicros = DialogueSessionManager.getMaxTickNanos() / 1000;
+        source.sendFeedback(() -> Text.translatable("blabber:commands.session_stats", sessions, pending, averageMicros, ticks, maxMicros), false);
+        for (Map.Entry<Identifier, Integer> entry : sessionCounts.entrySet()) {
+            source.sendFeedback(() -> Text.translatable("blabber:commands.session_stats.entry", entry.getKey().toString(), entry.getValue()), false);
+        }
+        return sessions;
+    }
+
+    private static int resetSessionStats(ServerCommandSource source) {
+        DialogueSessionManager.resetStats();
+        source.sendFeedback(() -> Text.translatable("blabber:commands.session_stats.reset"), false);
+        return 1;
+    }
+
+    private static int resetReopenStats(ServerCommandSource source) {
+        PlayerDialogueTracker.resetReopenStats();
+        source.sendFeedback(() -> Text.translatable("blabber:commands.reopen_stats.reset"), false);
+        return 1;
+    }
+}
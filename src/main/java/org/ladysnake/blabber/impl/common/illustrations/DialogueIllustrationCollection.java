@@ -47,12 +47,23 @@ public record DialogueIllustrationCollection(List<DialogueIllustration> elements
         return TYPE;
     }
 
+    @Override
+    public boolean hasParsableText() {
+        for (DialogueIllustration illustration : elements) {
+            if (illustration.hasParsableText()) return true;
+        }
+        return false;
+    }
+
     @Override
     public DialogueIllustration parseText(@Nullable ServerCommandSource source, @Nullable Entity sender) throws CommandSyntaxException {
         List<DialogueIllustration> parsedSub = new ArrayList<>(elements.size());
+        boolean changed = false;
         for (DialogueIllustration illustration : elements) {
-            parsedSub.add(illustration.parseText(source, sender));
+            DialogueIllustration parsed = illustration.parseText(source, sender);
+            changed |= parsed != illustration;
+            parsedSub.add(parsed);
         }
-        return new DialogueIllustrationCollection(parsedSub);
+        return changed ? new DialogueIllustrationCollection(parsedSub) : this;
     }
 }
@@ -66,4 +66,9 @@ public record DialogueIllustrationItem(ItemStack stack, IllustrationAnchor ancho
     public DialogueIllustrationType<?> getType() {
         return TYPE;
     }
+
+    @Override
+    public boolean hasParsableText() {
+        return false;
+    }
 }
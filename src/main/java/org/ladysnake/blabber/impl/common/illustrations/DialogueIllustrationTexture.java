@@ -82,4 +82,9 @@ public record DialogueIllustrationTexture(
     public DialogueIllustrationType<? extends DialogueIllustration> getType() {
         return TYPE;
     }
+
+    @Override
+    public boolean hasParsableText() {
+        return false;
+    }
 }
@@ -86,6 +86,11 @@ public record DialogueIllustrationFakePlayer(GameProfile profile,
         return TYPE;
     }
 
+    @Override
+    public boolean hasParsableText() {
+        return false;
+    }
+
     public PlayerModelOptions modelOptionsOrDefault() {
         return this.modelOptions().orElse(PlayerModelOptions.DEFAULT);
     }
@@ -85,4 +85,9 @@ public record DialogueIllustrationNbtEntity(Identifier id, IllustrationAnchor an
     public DialogueIllustrationType<?> getType() {
         return TYPE;
     }
+
+    @Override
+    public boolean hasParsableText() {
+        return false;
+    }
 }
@@ -56,7 +56,7 @@ public class DialogueIllustrationSelectorEntity implements DialogueIllustrationE
     private static final int NO_ENTITY_FOUND = -1;
 
     private final Spec spec;
-    private int selectedEntityId;
+    private final int selectedEntityId;
 
     public DialogueIllustrationSelectorEntity(Spec spec) {
         this(spec, NO_ENTITY_FOUND);
@@ -122,13 +122,19 @@ public class DialogueIllustrationSelectorEntity implements DialogueIllustrationE
         return TYPE;
     }
 
+    @Override
+    public boolean hasParsableText() {
+        return true;
+    }
+
     @Override
     public DialogueIllustrationSelectorEntity parseText(@Nullable ServerCommandSource source, @Nullable Entity sender) throws CommandSyntaxException {
         if (source != null) {
             EntitySelector entitySelector = new EntitySelectorReader(new StringReader(spec().selector())).read();
             Entity e = entitySelector.getEntity(source);
             if (e instanceof LivingEntity living) {
-                this.selectedEntityId = living.getId();
+                // Templates are shared between players, so this one must be left untouched
+                return new DialogueIllustrationSelectorEntity(this.spec, living.getId());
             }
         }
         return this;
@@ -18,94 +18,326 @@
 package org.ladysnake.blabber.impl.common.machine;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
-import com.mojang.brigadier.exceptions.DynamicCommandExceptionType;
-import it.unimi.dsi.fastutil.ints.Int2BooleanMap;
-import it.unimi.dsi.fastutil.ints.Int2BooleanMaps;
-import it.unimi.dsi.fastutil.ints.Int2BooleanOpenHashMap;
+import io.netty.handler.codec.DecoderException;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import net.minecraft.loot.condition.LootCondition;
 import net.minecraft.loot.context.LootContext;
 import net.minecraft.network.RegistryByteBuf;
 import net.minecraft.network.codec.PacketCodec;
 import net.minecraft.network.codec.PacketCodecs;
-import net.minecraft.registry.RegistryKey;
-import net.minecraft.registry.RegistryKeys;
-import net.minecraft.registry.entry.RegistryEntry;
 import net.minecraft.text.Text;
 import net.minecraft.util.Identifier;
 import org.jetbrains.annotations.Nullable;
 import org.ladysnake.blabber.Blabber;
 import org.ladysnake.blabber.api.illustration.DialogueIllustration;
+import org.ladysnake.blabber.api.illustration.DialogueIllustrationType;
 import org.ladysnake.blabber.api.layout.DialogueLayout;
+import org.ladysnake.blabber.impl.common.DialogueRegistry;
+import org.ladysnake.blabber.impl.common.DialogueTemplateCache;
 import org.ladysnake.blabber.impl.common.InstancedDialogueAction;
 import org.ladysnake.blabber.impl.common.model.DialogueChoice;
 import org.ladysnake.blabber.impl.common.model.DialogueChoiceCondition;
+import org.ladysnake.blabber.impl.common.model.DialogueGraph;
 import org.ladysnake.blabber.impl.common.model.DialogueState;
 import org.ladysnake.blabber.impl.common.model.DialogueTemplate;
 import org.ladysnake.blabber.impl.common.model.UnavailableAction;
 import org.ladysnake.blabber.impl.common.model.UnavailableDisplay;
 import org.ladysnake.blabber.impl.common.packets.ChoiceAvailabilityPayload;
+import org.ladysnake.blabber.impl.common.packets.DialogueStatesPayload;
+import org.ladysnake.blabber.impl.common.packets.SelectedDialogueStatePayload;
+import org.ladysnake.blabber.impl.common.serialization.CompactDialogueCodecs;
+import org.ladysnake.blabber.impl.common.settings.ConditionEvaluationScope;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.IntStream;
 
 public final class DialogueStateMachine {
-    private static final DynamicCommandExceptionType INVALID_PREDICATE_EXCEPTION = new DynamicCommandExceptionType(id -> Text.translatable("blabber:commands.dialogue.start.predicate.invalid", String.valueOf(id)));
-
     private final Identifier id;
+    /**
+     * On the server, the template states get parsed from - on the client, only the states that were sent when opening the dialogue
+     */
     private final DialogueTemplate template;
-    private final Map<String, Int2BooleanMap> conditionalChoices;
-    private @Nullable String currentStateKey;
+    private final DialogueGraph graph;
+    /**
+     * States indexed like in {@link #graph}, which may be {@code null} if they have not been parsed yet (server) or received yet (client)
+     */
+    private final DialogueState[] states;
+    /**
+     * Resolved conditions indexed by flat choice index, empty on the client
+     */
+    private final LootContext.Entry<LootCondition>[] conditions;
+    /**
+     * Flat indices of the conditions that only depend on the world, empty on the client
+     */
+    private final BitSet worldScopedConditions;
+    /**
+     * Flat indices of the conditional choices that are currently available
+     */
+    private final BitSet availableConditionalChoices = new BitSet();
+    /**
+     * Parses the states of {@link #template} on demand, or {@code null} if they were all parsed beforehand
+     */
+    private final @Nullable StateParser lazyParser;
+    /**
+     * If {@code true}, the client only gets sent the current state and its successors, with more states following as it advances
+     */
+    private final boolean incrementalSync;
+    /**
+     * States that the client knows about, only tracked when they are synced incrementally
+     */
+    private final BitSet syncedStates = new BitSet();
+    private @Nullable CachedTemplate cachedTemplate;
+    /**
+     * The sequence number of the last availability update or state selection, sent on the server and received on the client
+     */
+    private int syncSequence;
+    /**
+     * On the client, whether a snapshot was requested after missing some updates
+     */
+    private boolean awaitingResync;
+    private boolean compactTemplates;
+    private int currentState = DialogueGraph.NO_STATE;
     private ImmutableList<AvailableChoice> availableChoices = ImmutableList.of();
 
-    public DialogueStateMachine(Identifier id, DialogueTemplate template, @Nullable String start) {
+    /**
+     * @param graph the compiled structure of {@code template}, which may have been compiled from an unparsed version of the same template
+     * @param conditions the resolved conditions of the choices in {@code graph}, indexed by flat choice index
+     * @param worldScopedConditions the flat indices of the conditions that can be {@linkplain WorldConditionResults shared between players}
+     * @param lazyParser if not {@code null}, used to parse the states of {@code template} as they become needed
+     * @param incrementalSync whether states should be sent to the client progressively, which is always the case if they are parsed lazily
+     */
+    public DialogueStateMachine(Identifier id, DialogueTemplate template, DialogueGraph graph, LootContext.Entry<LootCondition>[] conditions, BitSet worldScopedConditions, int start, @Nullable StateParser lazyParser, boolean incrementalSync) {
         this.template = template;
         this.id = id;
-        this.conditionalChoices = gatherConditionalChoices(template);
-        this.selectState(start == null ? template.start() : start);
-    }
-
-    private static Map<String, Int2BooleanMap> gatherConditionalChoices(DialogueTemplate template) {
-        Map<String, Int2BooleanMap> conditionalChoices = new HashMap<>();
-        for (Map.Entry<String, DialogueState> entry : template.states().entrySet()) {
-            List<DialogueChoice> choices = entry.getValue().choices();
-            Int2BooleanMap m = new Int2BooleanOpenHashMap();
-            for (int i = 0; i < choices.size(); i++) {
-                DialogueChoice choice = choices.get(i);
-                if (choice.condition().isPresent()) {
-                    m.put(i, false);
-                }
+        this.graph = graph;
+        this.conditions = conditions;
+        this.worldScopedConditions = worldScopedConditions;
+        this.lazyParser = lazyParser;
+        this.incrementalSync = incrementalSync || lazyParser != null;
+        this.states = lazyParser == null ? graph.sortStates(template.states()) : new DialogueState[graph.stateCount()];
+        this.selectState(start);
+    }
+
+    @SuppressWarnings("unchecked")
+    private DialogueStateMachine(Identifier id, DialogueGraph graph, DialogueTemplate knownTemplate, int start) {
+        this(id, knownTemplate, graph, new LootContext.Entry[0], new BitSet(), start, null, false);
+    }
+
+    public static final PacketCodec<RegistryByteBuf, DialogueStateMachine> PACKET_CODEC = PacketCodec.of(DialogueStateMachine::write, DialogueStateMachine::read);
+    private static final PacketCodec<RegistryByteBuf, Map<String, DialogueState>> STATES_PACKET_CODEC = PacketCodecs.map(HashMap::new, PacketCodecs.STRING, DialogueState.PACKET_CODEC);
+    private static final PacketCodec<RegistryByteBuf, Map<String, DialogueIllustration>> ILLUSTRATIONS_PACKET_CODEC = PacketCodecs.map(HashMap::new, PacketCodecs.STRING, DialogueIllustrationType.PACKET_CODEC);
+    // Ways the template can be sent to the client
+    private static final byte FULL_TEMPLATE = 0;
+    private static final byte NEW_CACHED_TEMPLATE = 1;
+    private static final byte CACHED_TEMPLATE = 2;
+    // Set on top of the above when using the compact format
+    private static final byte COMPACT_FLAG = (byte) 0x80;
+
+    private void write(RegistryByteBuf buf) {
+        Identifier.PACKET_CODEC.encode(buf, this.id);
+        CachedTemplate cached = this.incrementalSync ? null : this.cachedTemplate;
+        byte flags = this.compactTemplates ? COMPACT_FLAG : 0;
+        PacketCodec<? super RegistryByteBuf, DialogueTemplate> templateCodec = this.compactTemplates ? CompactDialogueCodecs.TEMPLATE : DialogueTemplate.PACKET_CODEC;
+        if (cached == null) {
+            buf.writeByte(FULL_TEMPLATE | flags);
+            DialogueGraph.PACKET_CODEC.encode(buf, this.graph);
+            templateCodec.encode(buf, this.createSyncedTemplate());
+        } else {
+            buf.writeByte((cached.knownByClient() ? CACHED_TEMPLATE : NEW_CACHED_TEMPLATE) | flags);
+            buf.writeLong(cached.contentHash());
+            if (!cached.knownByClient()) {
+                templateCodec.encode(buf, cached.unparsed());
             }
-            if (!m.isEmpty()) {
-                conditionalChoices.put(entry.getKey(), m);
+            // Only send what was parsed specifically for this player
+            Map<String, DialogueState> stateOverrides = getOverrides(this.template.states(), cached.unparsed().states());
+            Map<String, DialogueIllustration> illustrationOverrides = getOverrides(this.template.illustrations(), cached.unparsed().illustrations());
+            PacketCodec<? super RegistryByteBuf, Map<String, DialogueState>> statesCodec = this.compactTemplates ? CompactDialogueCodecs.STATES : STATES_PACKET_CODEC;
+            PacketCodec<? super RegistryByteBuf, Map<String, DialogueIllustration>> illustrationsCodec = this.compactTemplates ? CompactDialogueCodecs.ILLUSTRATIONS : ILLUSTRATIONS_PACKET_CODEC;
+            statesCodec.encode(buf, stateOverrides);
+            illustrationsCodec.encode(buf, illustrationOverrides);
+        }
+        buf.writeVarInt(this.getCurrentStateIndex());
+    }
+
+    private static DialogueStateMachine read(RegistryByteBuf buf) {
+        Identifier id = Identifier.PACKET_CODEC.decode(buf);
+        byte header = buf.readByte();
+        boolean compact = (header & COMPACT_FLAG) != 0;
+        byte mode = (byte) (header & ~COMPACT_FLAG);
+        PacketCodec<? super RegistryByteBuf, DialogueTemplate> templateCodec = compact ? CompactDialogueCodecs.TEMPLATE : DialogueTemplate.PACKET_CODEC;
+        DialogueGraph graph;
+        DialogueTemplate template;
+        if (mode == FULL_TEMPLATE) {
+            graph = DialogueGraph.PACKET_CODEC.decode(buf);
+            template = templateCodec.decode(buf);
+        } else if (mode == NEW_CACHED_TEMPLATE || mode == CACHED_TEMPLATE) {
+            long contentHash = buf.readLong();
+            DialogueRegistry.Entry cached;
+            if (mode == NEW_CACHED_TEMPLATE) {
+                DialogueTemplate unparsed = templateCodec.decode(buf);
+                cached = new DialogueRegistry.Entry(unparsed, DialogueGraph.compile(unparsed), HashCode.fromLong(contentHash));
+                DialogueTemplateCache.getClientCache().put(id, contentHash, cached);
+            } else {
+                cached = DialogueTemplateCache.getClientCache().get(id, contentHash);
+                if (cached == null) {
+                    throw new DecoderException("Dialogue " + id + " is missing from the template cache");
+                }
             }
+            graph = cached.graph();
+            PacketCodec<? super RegistryByteBuf, Map<String, DialogueState>> statesCodec = compact ? CompactDialogueCodecs.STATES : STATES_PACKET_CODEC;
+            PacketCodec<? super RegistryByteBuf, Map<String, DialogueIllustration>> illustrationsCodec = compact ? CompactDialogueCodecs.ILLUSTRATIONS : ILLUSTRATIONS_PACKET_CODEC;
+            template = cached.template().withOverrides(statesCodec.decode(buf), illustrationsCodec.decode(buf));
+        } else {
+            throw new DecoderException("Unknown dialogue template encoding " + mode);
         }
-        return conditionalChoices;
+        return new DialogueStateMachine(id, graph, template, buf.readVarInt());
+    }
+
+    private static <V> Map<String, V> getOverrides(Map<String, V> parsed, Map<String, V> unparsed) {
+        Map<String, V> overrides = new HashMap<>();
+        parsed.forEach((key, value) -> {
+            if (value != unparsed.get(key)) {
+                overrides.put(key, value);
+            }
+        });
+        return overrides;
+    }
+
+    /**
+     * Lets the template be sent to the client as a reference to its cache, instead of in full
+     *
+     * @param cachedTemplate the unparsed template this dialogue was created from, or {@code null} to always send the full template
+     */
+    public void setCachedTemplate(@Nullable CachedTemplate cachedTemplate) {
+        this.cachedTemplate = cachedTemplate;
+    }
+
+    /**
+     * @param compactTemplates whether the client can read templates written with {@link CompactDialogueCodecs}
+     */
+    public void setCompactTemplates(boolean compactTemplates) {
+        this.compactTemplates = compactTemplates;
+    }
+
+    public boolean isSyncedIncrementally() {
+        return this.incrementalSync;
     }
 
-    public static final PacketCodec<RegistryByteBuf, DialogueStateMachine> PACKET_CODEC = PacketCodec.tuple(
-            Identifier.PACKET_CODEC, DialogueStateMachine::getId,
-            DialogueTemplate.PACKET_CODEC, m -> m.template,
-            PacketCodecs.STRING, DialogueStateMachine::getCurrentStateKey,
-            DialogueStateMachine::new
-    );
+    /**
+     * @return {@code true} if the client can only decode this dialogue if its template is still in the client's cache
+     */
+    public boolean reliesOnClientCache() {
+        return !this.incrementalSync && this.cachedTemplate != null && this.cachedTemplate.knownByClient();
+    }
 
-    private Map<String, DialogueState> getStates() {
-        return this.template.states();
+    /**
+     * @return the sequence number of the last availability update or state selection that was created for the client
+     */
+    public int getSyncSequence() {
+        return this.syncSequence;
     }
 
     private DialogueState getCurrentState() {
-        return getStates().get(this.getCurrentStateKey());
+        return this.getState(this.getCurrentStateIndex());
+    }
+
+    private DialogueState getState(int state) {
+        DialogueState ret = this.states[state];
+        if (ret == null) {
+            if (this.lazyParser == null) {
+                throw new IllegalStateException("State " + this.graph.getStateKey(state) + " of " + this.id + " has not been received yet");
+            }
+            ret = this.template.states().get(this.graph.getStateKey(state));
+            if (this.graph.hasParsableText(state)) {
+                try {
+                    ret = this.lazyParser.parse(ret);
+                } catch (CommandSyntaxException e) {
+                    Blabber.LOGGER.error("(Blabber) Failed to parse text for state {} of {}", this.graph.getStateKey(state), this.id, e);
+                }
+            }
+            this.states[state] = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @return a template holding only the states that the client is meant to know about
+     */
+    private DialogueTemplate createSyncedTemplate() {
+        if (!this.incrementalSync) return this.template;
+        Map<String, DialogueState> syncedStates = new HashMap<>();
+        for (int state = this.syncedStates.nextSetBit(0); state >= 0; state = this.syncedStates.nextSetBit(state + 1)) {
+            syncedStates.put(this.graph.getStateKey(state), this.getState(state));
+        }
+        return new DialogueTemplate(this.template.start(), this.template.unskippable(), syncedStates, this.template.illustrations(), this.template.layout());
+    }
+
+    /**
+     * Forgets which states were sent to the client, as it is about to receive the dialogue from scratch
+     */
+    public void resetSyncedStates() {
+        this.syncedStates.clear();
+        this.syncStates();
+    }
+
+    /**
+     * Makes sure the client knows about the current state and every state it can go to from there,
+     * so that it never has to wait for the server to display the next state.
+     *
+     * @return a payload containing the states the client did not know about, or {@code null} if there are none
+     */
+    public @Nullable DialogueStatesPayload syncStates() {
+        if (!this.incrementalSync) return null;
+        Int2ObjectMap<DialogueState> newStates = this.syncState(this.currentState, null);
+        int choiceCount = this.graph.getChoiceCount(this.currentState);
+        for (int choice = 0; choice < choiceCount; choice++) {
+            int nextState = this.graph.getNextState(this.currentState, choice);
+            if (nextState != DialogueGraph.NO_STATE) {
+                newStates = this.syncState(nextState, newStates);
+            }
+        }
+        return newStates == null ? null : new DialogueStatesPayload(newStates);
+    }
+
+    private @Nullable Int2ObjectMap<DialogueState> syncState(int state, @Nullable Int2ObjectMap<DialogueState> newStates) {
+        if (!this.syncedStates.get(state)) {
+            this.syncedStates.set(state);
+            if (newStates == null) newStates = new Int2ObjectOpenHashMap<>();
+            newStates.put(state, this.getState(state));
+        }
+        return newStates;
+    }
+
+    public void addStates(DialogueStatesPayload payload) {
+        for (Int2ObjectMap.Entry<DialogueState> state : payload.states().int2ObjectEntrySet()) {
+            this.states[state.getIntKey()] = state.getValue();
+        }
+    }
+
+    /**
+     * @return {@code true} if the state the given choice leads to is known, and can be displayed right away
+     */
+    public boolean isNextStateKnown(int choice) {
+        if (choice < 0 || choice >= this.graph.getChoiceCount(this.currentState)) return true;   // escape hatch or invalid, will be handled by #choose
+        int nextState = this.graph.getNextState(this.currentState, choice);
+        return nextState == DialogueGraph.NO_STATE || this.lazyParser != null || this.states[nextState] != null;
     }
 
     public Identifier getId() {
         return this.id;
     }
 
+    public DialogueGraph getGraph() {
+        return this.graph;
+    }
+
     public DialogueLayout<?> getLayout() {
         return this.template.layout();
     }
@@ -127,90 +359,179 @@ public final class DialogueStateMachine {
     }
 
     public boolean hasConditions() {
-        return !this.conditionalChoices.isEmpty();
-    }
-
-    public @Nullable ChoiceAvailabilityPayload updateConditions(LootContext context) throws CommandSyntaxException {
-        ChoiceAvailabilityPayload ret = null;
-        for (Map.Entry<String, Int2BooleanMap> conditionalState : this.conditionalChoices.entrySet()) {
-            List<DialogueChoice> availableChoices = getStates().get(conditionalState.getKey()).choices();
-            for (Int2BooleanMap.Entry conditionalChoice : conditionalState.getValue().int2BooleanEntrySet()) {
-                RegistryKey<LootCondition> predicateId = availableChoices.get(conditionalChoice.getIntKey()).condition().orElseThrow().predicate();
-                Optional<LootCondition> condition = context.getWorld().getServer()
-                        .getReloadableRegistries()
-                        .createRegistryLookup()
-                        .getOptionalEntry(RegistryKeys.PREDICATE, predicateId)
-                        .map(RegistryEntry::value);
-                if (condition.isEmpty()) throw INVALID_PREDICATE_EXCEPTION.create(predicateId);
-                boolean testResult = runTest(condition.get(), context);
-                if (testResult != conditionalChoice.setValue(testResult)) {
-                    if (ret == null) ret = new ChoiceAvailabilityPayload();
-                    ret.markUpdated(conditionalState.getKey(), conditionalChoice.getIntKey(), testResult);
+        return this.graph.hasConditions();
+    }
+
+    public boolean hasWorldScopedConditions() {
+        return !this.worldScopedConditions.isEmpty();
+    }
+
+    /**
+     * @param context       the context in which to test conditions that may depend on the player, or {@code null} to only test world-scoped conditions
+     * @param worldContext  the results of conditions that only depend on the world, shared with other players in the same world
+     */
+    public @Nullable ChoiceAvailabilityPayload updateConditions(@Nullable LootContext context, WorldConditionResults worldContext, ConditionEvaluationScope scope) {
+        return switch (scope) {
+            case ALL -> this.updateConditions(context, worldContext, 0, this.graph.getChoiceOffset(this.graph.stateCount()), null);
+            case CURRENT_STATE -> this.updateStateConditions(context, worldContext, this.currentState, null);
+            case SUCCESSORS -> {
+                ChoiceAvailabilityPayload ret = this.updateStateConditions(context, worldContext, this.currentState, null);
+                int choiceCount = this.graph.getChoiceCount(this.currentState);
+                for (int choice = 0; choice < choiceCount; choice++) {
+                    int nextState = this.graph.getNextState(this.currentState, choice);
+                    if (nextState != DialogueGraph.NO_STATE && nextState != this.currentState && !this.isEarlierSuccessor(nextState, choice)) {
+                        ret = this.updateStateConditions(context, worldContext, nextState, ret);
+                    }
                 }
+                yield ret;
+            }
+        };
+    }
+
+    private boolean isEarlierSuccessor(int state, int choice) {
+        for (int i = 0; i < choice; i++) {
+            if (this.graph.getNextState(this.currentState, i) == state) return true;
+        }
+        return false;
+    }
+
+    private @Nullable ChoiceAvailabilityPayload updateStateConditions(@Nullable LootContext context, WorldConditionResults worldContext, int state, @Nullable ChoiceAvailabilityPayload ret) {
+        int firstChoice = this.graph.getChoiceOffset(state);
+        return this.updateConditions(context, worldContext, firstChoice, firstChoice + this.graph.getChoiceCount(state), ret);
+    }
+
+    /**
+     * Tests every conditional choice with a flat index in {@code [fromChoice, toChoice)}
+     */
+    private @Nullable ChoiceAvailabilityPayload updateConditions(@Nullable LootContext context, WorldConditionResults worldContext, int fromChoice, int toChoice, @Nullable ChoiceAvailabilityPayload ret) {
+        for (int choice = this.graph.nextConditionalChoice(fromChoice); choice >= 0 && choice < toChoice; choice = this.graph.nextConditionalChoice(choice + 1)) {
+            boolean worldScoped = this.worldScopedConditions.get(choice);
+            if (context == null && !worldScoped) continue;
+            // Predicates that could not be resolved were reported on reload, and are never fulfilled
+            LootContext.Entry<LootCondition> condition = choice < this.conditions.length ? this.conditions[choice] : null;
+            boolean testResult = condition != null && (worldScoped ? worldContext.test(condition) : runTest(condition, context));
+            if (testResult != this.availableConditionalChoices.get(choice)) {
+                this.availableConditionalChoices.set(choice, testResult);
+                if (ret == null) ret = new ChoiceAvailabilityPayload(++this.syncSequence, false);
+                ret.choices().set(this.graph.getConditionalRank(choice));
             }
         }
         return ret;
     }
 
     public ChoiceAvailabilityPayload createFullAvailabilityUpdatePacket() {
-        return new ChoiceAvailabilityPayload(this.conditionalChoices);
+        ChoiceAvailabilityPayload payload = new ChoiceAvailabilityPayload(++this.syncSequence, true);
+        for (int choice = this.availableConditionalChoices.nextSetBit(0); choice >= 0; choice = this.availableConditionalChoices.nextSetBit(choice + 1)) {
+            payload.choices().set(this.graph.getConditionalRank(choice));
+        }
+        return payload;
+    }
+
+    /**
+     * @return a payload telling the client which state the server thinks the player is in, e.g. after rejecting a choice
+     */
+    public SelectedDialogueStatePayload createStateSelectionPacket() {
+        return new SelectedDialogueStatePayload(++this.syncSequence, this.getCurrentStateIndex());
     }
 
-    private static boolean runTest(LootCondition condition, LootContext context) {
-        LootContext.Entry<LootCondition> lootEntry = LootContext.predicate(condition);
-        context.markActive(lootEntry);
-        boolean testResult = condition.test(context);
-        context.markInactive(lootEntry);
-        return testResult;
+    static boolean runTest(LootContext.Entry<LootCondition> condition, LootContext context) {
+        // Not marking the condition as active, as that would allocate a set entry for every test
+        // A reference loop back to this condition still gets caught by the reference condition that closes it
+        return condition.value().test(context);
     }
 
-    public void applyAvailabilityUpdate(ChoiceAvailabilityPayload payload) {
-        payload.updatedChoices().forEach((stateKey, choiceIndices) -> {
-            Int2BooleanMap conditionalState = this.conditionalChoices.get(stateKey);
-            for (Int2BooleanMap.Entry updatedChoice : choiceIndices.int2BooleanEntrySet()) {
-                conditionalState.put(updatedChoice.getIntKey(), updatedChoice.getBooleanValue());
+    /**
+     * Applies an availability update, unless it is older than the last update that was applied.
+     *
+     * @return {@code true} if updates were missed, in which case the client should request a snapshot
+     */
+    public boolean applyAvailabilityUpdate(ChoiceAvailabilityPayload payload) {
+        if (payload.sequence() <= this.syncSequence) return false;  // stale
+        if (payload.snapshot()) {
+            this.availableConditionalChoices.clear();
+        } else if (payload.sequence() != this.syncSequence + 1) {
+            return this.detectDesync();
+        }
+        BitSet choices = payload.choices();
+        int rank = 0;
+        for (int choice = this.graph.nextConditionalChoice(0); choice >= 0; choice = this.graph.nextConditionalChoice(choice + 1), rank++) {
+            if (choices.get(rank)) {
+                this.availableConditionalChoices.flip(choice);
             }
-            this.availableChoices = this.rebuildAvailableChoices();
-        });
+        }
+        this.syncSequence = payload.sequence();
+        this.awaitingResync &= !payload.snapshot();
+        this.availableChoices = this.rebuildAvailableChoices();
+        return false;
+    }
+
+    /**
+     * Selects the state sent by the server, unless it is older than the last update that was applied.
+     *
+     * @return {@code true} if updates were missed, in which case the client should request a snapshot
+     */
+    public boolean applyStateSelection(SelectedDialogueStatePayload payload) {
+        if (payload.sequence() <= this.syncSequence) return false;  // stale
+        this.selectState(payload.state());
+        if (payload.sequence() != this.syncSequence + 1) {
+            // Missed availability updates can only be caught up with a snapshot
+            return this.detectDesync();
+        }
+        this.syncSequence = payload.sequence();
+        return false;
+    }
+
+    private boolean detectDesync() {
+        if (this.awaitingResync) return false;
+        this.awaitingResync = true;
+        return true;
     }
 
     public boolean isAvailable(int choice) {
-        return this.conditionalChoices.getOrDefault(this.currentStateKey, Int2BooleanMaps.EMPTY_MAP).getOrDefault(choice, true);
+        return this.isAvailable(this.currentState, choice);
+    }
+
+    private boolean isAvailable(int state, int choice) {
+        return !this.graph.isConditional(state, choice) || this.availableConditionalChoices.get(this.graph.getChoiceOffset(state) + choice);
     }
 
     public Optional<InstancedDialogueAction<?>> getStartAction() {
-        return this.getStates().get(this.template.start()).action();
+        return this.getState(this.graph.start()).action();
     }
 
     /**
      * @throws IllegalStateException if making an invalid choice
      */
     public ChoiceResult choose(int choice) {
-        if (choice == AvailableChoice.ESCAPE_HATCH.originalChoiceIndex() && IntStream.range(0, this.getCurrentState().choices().size()).noneMatch(this::isAvailable)) {
-            Blabber.LOGGER.warn("(Blabber) Escape hatch used on {}#{}", this.getId(), this.currentStateKey);
+        if (choice == AvailableChoice.ESCAPE_HATCH.originalChoiceIndex() && IntStream.range(0, this.graph.getChoiceCount(this.currentState)).noneMatch(this::isAvailable)) {
+            Blabber.LOGGER.warn("(Blabber) Escape hatch used on {}#{}", this.getId(), this.getCurrentStateKey());
             return ChoiceResult.DEFAULT_END;
         }
 
         this.validateChoice(choice);
-        return this.selectState(this.getCurrentState().getNextState(choice));
+        int nextState = this.graph.getNextState(this.currentState, choice);
+        if (nextState == DialogueGraph.NO_STATE) {
+            throw new IllegalArgumentException(this.getCurrentState().getNextState(choice) + " is not an available dialogue state");
+        }
+        return this.selectState(nextState);
     }
 
     private void validateChoice(int choice) {
-        if (choice < 0 || choice >= this.getCurrentState().choices().size()) {
-            throw new IllegalStateException("only choices 0 to %d available".formatted(this.getCurrentState().choices().size() - 1));
+        int choiceCount = this.graph.getChoiceCount(this.currentState);
+        if (choice < 0 || choice >= choiceCount) {
+            throw new IllegalStateException("only choices 0 to %d available".formatted(choiceCount - 1));
         } else if (!this.isAvailable(choice)) {
             throw new IllegalStateException("condition %s is not fulfilled".formatted(this.getCurrentState().choices().get(choice).condition()));
         }
     }
 
-    public DialogueState selectState(String state) {
-        if (!this.getStates().containsKey(state)) {
-            throw new IllegalArgumentException(state + " is not an available dialogue state");
+    public DialogueState selectState(int state) {
+        if (state < 0 || state >= this.states.length) {
+            throw new IllegalArgumentException("#" + state + " is not an available dialogue state");
         }
-        this.currentStateKey = state;
-        DialogueState currentState = this.getStates().get(state);
+        this.currentState = state;
         this.availableChoices = rebuildAvailableChoices();
-        return currentState;
+        return this.getState(state);
     }
 
     private ImmutableList<AvailableChoice> rebuildAvailableChoices() {
@@ -219,7 +540,7 @@ public final class DialogueStateMachine {
         boolean allUnavailable = true;
         for (int i = 0; i < availableChoices.size(); i++) {
             DialogueChoice c = availableChoices.get(i);
-            boolean available = conditionalChoices.getOrDefault(this.currentStateKey, Int2BooleanMaps.EMPTY_MAP).getOrDefault(i, true);
+            boolean available = this.isAvailable(this.currentState, i);
             Optional<UnavailableAction> whenUnavailable = c.condition().map(DialogueChoiceCondition::whenUnavailable);
             allUnavailable &= !available;
             if (available || (whenUnavailable.filter(t -> t.display() == UnavailableDisplay.GRAYED_OUT).isPresent())) {
@@ -232,7 +553,7 @@ public final class DialogueStateMachine {
             }
         }
         if (allUnavailable) {
-            Blabber.LOGGER.warn("[Blabber] No choice available in state '{}' of {} ({} were all unavailable)", this.currentStateKey, this.id, availableChoices);
+            Blabber.LOGGER.warn("[Blabber] No choice available in state '{}' of {} ({} were all unavailable)", this.getCurrentStateKey(), this.id, availableChoices);
             newChoices.add(AvailableChoice.ESCAPE_HATCH);
         }
         return newChoices.build();
@@ -242,16 +563,27 @@ public final class DialogueStateMachine {
         return Optional.of(Text.translatable("blabber:dialogue.locked_choice"));
     }
 
+    public int getCurrentStateIndex() {
+        if (this.currentState == DialogueGraph.NO_STATE) throw new NullPointerException(this + " has not been initialized !");
+        return this.currentState;
+    }
+
     public String getCurrentStateKey() {
-        return Objects.requireNonNull(this.currentStateKey, () -> this + " has not been initialized !");
+        return this.graph.getStateKey(this.getCurrentStateIndex());
     }
 
     public boolean isUnskippable() {
         return this.template.unskippable();
     }
 
+    /**
+     * @param contentHash the hash of {@code unparsed}, as sent in the dialogue list
+     * @param knownByClient whether the client has {@code unparsed} in its template cache
+     */
+    public record CachedTemplate(long contentHash, DialogueTemplate unparsed, boolean knownByClient) { }
+
     @Override
     public String toString() {
-        return "DialogueStateMachine" + this.getStates();
+        return "DialogueStateMachine[" + this.id + "]" + this.template.states();
     }
 }
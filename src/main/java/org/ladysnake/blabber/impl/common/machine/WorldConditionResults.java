@@ -0,0 +1,64 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.machine;
+
+import it.unimi.dsi.fastutil.objects.Reference2BooleanMap;
+import it.unimi.dsi.fastutil.objects.Reference2BooleanOpenHashMap;
+import net.minecraft.loot.condition.LootCondition;
+import net.minecraft.loot.context.LootContext;
+import net.minecraft.loot.context.LootContextParameterSet;
+import net.minecraft.loot.context.LootContextTypes;
+import net.minecraft.server.world.ServerWorld;
+
+import java.util.Optional;
+
+/**
+ * The results of world-scoped choice conditions in a single world, shared by every dialogue tested against it.
+ *
+ * <p>Conditions get tested the first time a dialogue needs them, and the results are kept until the next {@linkplain #startTick tick}.
+ */
+public final class WorldConditionResults {
+    private final LootContext context;
+    private final Reference2BooleanMap<LootCondition> results = new Reference2BooleanOpenHashMap<>();
+    private int tick;
+
+    public WorldConditionResults(ServerWorld world) {
+        this.context = new LootContext.Builder(new LootContextParameterSet.Builder(world).build(LootContextTypes.EMPTY)).build(Optional.empty());
+    }
+
+    /**
+     * Forgets the results from previous ticks, as the world may have changed since
+     */
+    public WorldConditionResults startTick(int tick) {
+        if (tick != this.tick) {
+            this.tick = tick;
+            this.results.clear();
+        }
+        return this;
+    }
+
+    boolean test(LootContext.Entry<LootCondition> condition) {
+        LootCondition predicate = condition.value();
+        if (this.results.containsKey(predicate)) {
+            return this.results.getBoolean(predicate);
+        }
+        boolean result = DialogueStateMachine.runTest(condition, this.context);
+        this.results.put(predicate, result);
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.model;
+
+import com.mojang.serialization.Codec;
+import net.minecraft.util.StringIdentifiable;
+
+/**
+ * What the result of a choice condition depends on
+ */
+public enum ConditionScope implements StringIdentifiable {
+    /**
+     * The condition may depend on the player, and gets tested for each of them
+     */
+    PLAYER("player"),
+    /**
+     * The condition only depends on the world, and gets tested once per world and per tick for every player in a dialogue
+     */
+    WORLD("world");
+
+    public static final Codec<ConditionScope> CODEC = StringIdentifiable.createCodec(ConditionScope::values);
+
+    private final String id;
+
+    ConditionScope(String id) {
+        this.id = id;
+    }
+
+    @Override
+    public String asString() {
+        return this.id;
+    }
+}
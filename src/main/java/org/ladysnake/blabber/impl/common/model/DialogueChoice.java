@@ -51,6 +51,11 @@ public record DialogueChoice(Text text, List<String> illustrations, String next,
             DialogueChoice::new
     );
 
+    public boolean hasParsableText() {
+        return ParsableTexts.needsParsing(this.text())
+                || this.condition().flatMap(c -> c.whenUnavailable().message()).filter(ParsableTexts::needsParsing).isPresent();
+    }
+
     public DialogueChoice parseText(@Nullable ServerCommandSource source, @Nullable Entity sender) throws CommandSyntaxException {
         Optional<DialogueChoiceCondition> parsedCondition = condition().isEmpty() ? Optional.empty() : Optional.of(condition().get().parseText(source, sender));
         return new DialogueChoice(Texts.parse(source, text(), sender, 0), illustrations(), next(), parsedCondition);
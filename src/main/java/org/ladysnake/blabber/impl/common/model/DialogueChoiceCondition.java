@@ -30,11 +30,15 @@ import net.minecraft.server.command.ServerCommandSource;
 import org.jetbrains.annotations.Nullable;
 import org.ladysnake.blabber.Blabber;
 
-public record DialogueChoiceCondition(RegistryKey<LootCondition> predicate, UnavailableAction whenUnavailable) {
+/**
+ * @param scope what the predicate depends on, which decides whether its result can be shared between players
+ */
+public record DialogueChoiceCondition(RegistryKey<LootCondition> predicate, UnavailableAction whenUnavailable, ConditionScope scope) {
     public static final RegistryKey<LootCondition> DUMMY_CONDITION = RegistryKey.of(RegistryKeys.PREDICATE, Blabber.id("client_dummy"));
     public static final Codec<DialogueChoiceCondition> CODEC = RecordCodecBuilder.create(instance -> instance.group(
             RegistryKey.createCodec(RegistryKeys.PREDICATE).fieldOf("predicate").forGetter(DialogueChoiceCondition::predicate),
-            UnavailableAction.CODEC.fieldOf("when_unavailable").forGetter(DialogueChoiceCondition::whenUnavailable)
+            UnavailableAction.CODEC.fieldOf("when_unavailable").forGetter(DialogueChoiceCondition::whenUnavailable),
+            ConditionScope.CODEC.optionalFieldOf("scope", ConditionScope.PLAYER).forGetter(DialogueChoiceCondition::scope)
     ).apply(instance, DialogueChoiceCondition::new));
     public static final PacketCodec<PacketByteBuf, DialogueChoiceCondition> PACKET_CODEC = PacketCodec.tuple(
             // Not writing the condition, it is handled serverside
@@ -43,10 +47,15 @@ public record DialogueChoiceCondition(RegistryKey<LootCondition> predicate, Unav
             DialogueChoiceCondition::new
     );
 
+    public DialogueChoiceCondition(RegistryKey<LootCondition> predicate, UnavailableAction whenUnavailable) {
+        this(predicate, whenUnavailable, ConditionScope.PLAYER);
+    }
+
     public DialogueChoiceCondition parseText(@Nullable ServerCommandSource source, @Nullable Entity sender) throws CommandSyntaxException {
         return new DialogueChoiceCondition(
                 predicate(),
-                whenUnavailable().parseText(source, sender)
+                whenUnavailable().parseText(source, sender),
+                scope()
         );
     }
 }
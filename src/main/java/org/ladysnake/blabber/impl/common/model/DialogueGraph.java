@@ -0,0 +1,247 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.model;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import org.ladysnake.blabber.api.illustration.DialogueIllustration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, array-backed view of the structure of a {@link DialogueTemplate}.
+ *
+ * <p>States are numbered densely in the natural order of their keys, so that two graphs compiled from
+ * templates with the same state keys always agree on indices, even on different sides of the network.
+ * Choices are additionally numbered across the whole dialogue: the choices of state {@code s}
+ * occupy the flat indices {@code [choiceOffset(s), choiceOffset(s + 1))}.
+ */
+public final class DialogueGraph {
+    public static final int NO_STATE = -1;
+    /**
+     * Sends the structure of a dialogue without its contents, so that the client can follow along while states are streamed to it.
+     * Which states and illustrations have parsable text is not sent, as only the server parses text.
+     */
+    public static final PacketCodec<PacketByteBuf, DialogueGraph> PACKET_CODEC = PacketCodec.of(DialogueGraph::write, DialogueGraph::read);
+
+    private final String[] stateKeys;
+    private final Object2IntMap<String> stateIndices;
+    private final int start;
+    private final int[] choiceOffsets;
+    private final int[] transitions;
+    private final BitSet conditionalChoices;
+    /**
+     * For each flat choice index, the number of conditional choices that come before it
+     */
+    private final int[] conditionalRanks;
+    private final BitSet parsableStates;
+    private final List<String> parsableIllustrations;
+
+    private DialogueGraph(String[] stateKeys, Object2IntMap<String> stateIndices, int start, int[] choiceOffsets, int[] transitions, BitSet conditionalChoices, BitSet parsableStates, List<String> parsableIllustrations) {
+        this.stateKeys = stateKeys;
+        this.stateIndices = stateIndices;
+        this.start = start;
+        this.choiceOffsets = choiceOffsets;
+        this.transitions = transitions;
+        this.conditionalChoices = conditionalChoices;
+        this.conditionalRanks = new int[transitions.length + 1];
+        for (int i = 0; i < transitions.length; i++) {
+            this.conditionalRanks[i + 1] = this.conditionalRanks[i] + (conditionalChoices.get(i) ? 1 : 0);
+        }
+        this.parsableStates = parsableStates;
+        this.parsableIllustrations = parsableIllustrations;
+    }
+
+    public static DialogueGraph compile(DialogueTemplate template) {
+        String[] stateKeys = template.states().keySet().toArray(String[]::new);
+        Arrays.sort(stateKeys);
+        Object2IntMap<String> stateIndices = indexStates(stateKeys);
+
+        int[] choiceOffsets = new int[stateKeys.length + 1];
+        for (int i = 0; i < stateKeys.length; i++) {
+            choiceOffsets[i + 1] = choiceOffsets[i] + template.states().get(stateKeys[i]).choices().size();
+        }
+
+        int[] transitions = new int[choiceOffsets[stateKeys.length]];
+        BitSet conditionalChoices = new BitSet(transitions.length);
+        for (int i = 0; i < stateKeys.length; i++) {
+            List<DialogueChoice> choices = template.states().get(stateKeys[i]).choices();
+            for (int c = 0; c < choices.size(); c++) {
+                DialogueChoice choice = choices.get(c);
+                transitions[choiceOffsets[i] + c] = stateIndices.getInt(choice.next());
+                if (choice.condition().isPresent()) {
+                    conditionalChoices.set(choiceOffsets[i] + c);
+                }
+            }
+        }
+
+        BitSet parsableStates = new BitSet(stateKeys.length);
+        for (int i = 0; i < stateKeys.length; i++) {
+            if (template.states().get(stateKeys[i]).hasParsableText()) {
+                parsableStates.set(i);
+            }
+        }
+
+        List<String> parsableIllustrations = new ArrayList<>();
+        for (Map.Entry<String, DialogueIllustration> illustration : template.illustrations().entrySet()) {
+            if (illustration.getValue().hasParsableText()) {
+                parsableIllustrations.add(illustration.getKey());
+            }
+        }
+
+        return new DialogueGraph(stateKeys, stateIndices, stateIndices.getInt(template.start()), choiceOffsets, transitions, conditionalChoices, parsableStates, List.copyOf(parsableIllustrations));
+    }
+
+    private static Object2IntMap<String> indexStates(String[] stateKeys) {
+        Object2IntMap<String> stateIndices = new Object2IntOpenHashMap<>(stateKeys.length);
+        stateIndices.defaultReturnValue(NO_STATE);
+        for (int i = 0; i < stateKeys.length; i++) {
+            stateIndices.put(stateKeys[i], i);
+        }
+        return stateIndices;
+    }
+
+    private static void write(DialogueGraph graph, PacketByteBuf buf) {
+        buf.writeVarInt(graph.stateKeys.length);
+        for (int i = 0; i < graph.stateKeys.length; i++) {
+            buf.writeString(graph.stateKeys[i]);
+            buf.writeVarInt(graph.getChoiceCount(i));
+        }
+        buf.writeVarInt(graph.start);
+        for (int transition : graph.transitions) {
+            buf.writeVarInt(transition + 1);    // NO_STATE would otherwise always take 5 bytes
+        }
+        buf.writeBitSet(graph.conditionalChoices);
+    }
+
+    private static DialogueGraph read(PacketByteBuf buf) {
+        int stateCount = buf.readVarInt();
+        String[] stateKeys = new String[stateCount];
+        int[] choiceOffsets = new int[stateCount + 1];
+        for (int i = 0; i < stateCount; i++) {
+            stateKeys[i] = buf.readString();
+            choiceOffsets[i + 1] = choiceOffsets[i] + buf.readVarInt();
+        }
+        int start = buf.readVarInt();
+        int[] transitions = new int[choiceOffsets[stateCount]];
+        for (int i = 0; i < transitions.length; i++) {
+            transitions[i] = buf.readVarInt() - 1;
+        }
+        BitSet conditionalChoices = buf.readBitSet();
+        return new DialogueGraph(stateKeys, indexStates(stateKeys), start, choiceOffsets, transitions, conditionalChoices, new BitSet(), List.of());
+    }
+
+    public int stateCount() {
+        return this.stateKeys.length;
+    }
+
+    public int start() {
+        return this.start;
+    }
+
+    public String getStateKey(int state) {
+        return this.stateKeys[state];
+    }
+
+    /**
+     * @return the index of the state with the given key, or {@link #NO_STATE} if there is no such state
+     */
+    public int getStateIndex(String key) {
+        return this.stateIndices.getInt(key);
+    }
+
+    public int getChoiceCount(int state) {
+        return this.choiceOffsets[state + 1] - this.choiceOffsets[state];
+    }
+
+    /**
+     * @return the flat index of the first choice of the given state
+     */
+    public int getChoiceOffset(int state) {
+        return this.choiceOffsets[state];
+    }
+
+    /**
+     * @return the index of the state a choice leads to, or {@link #NO_STATE} if it points to a nonexistent state
+     */
+    public int getNextState(int state, int choice) {
+        return this.transitions[this.choiceOffsets[state] + choice];
+    }
+
+    public boolean isConditional(int state, int choice) {
+        return this.conditionalChoices.get(this.choiceOffsets[state] + choice);
+    }
+
+    /**
+     * @return the first flat choice index at or after {@code fromChoice} that is conditional, or {@code -1} if there is none
+     */
+    public int nextConditionalChoice(int fromChoice) {
+        return this.conditionalChoices.nextSetBit(fromChoice);
+    }
+
+    /**
+     * @return the position of the given choice among the conditional choices of this graph, ordered by flat index
+     */
+    public int getConditionalRank(int choice) {
+        return this.conditionalRanks[choice];
+    }
+
+    /**
+     * @return {@code true} if the texts of the given state need to be parsed for each player
+     * @see DialogueState#hasParsableText()
+     */
+    public boolean hasParsableText(int state) {
+        return this.parsableStates.get(state);
+    }
+
+    /**
+     * @return the first state at or after {@code fromState} with texts that need parsing, or {@code -1} if there is none
+     */
+    public int nextParsableState(int fromState) {
+        return this.parsableStates.nextSetBit(fromState);
+    }
+
+    /**
+     * @return the names of the illustrations with texts that need to be parsed for each player
+     * @see DialogueIllustration#hasParsableText()
+     */
+    public List<String> getParsableIllustrations() {
+        return this.parsableIllustrations;
+    }
+
+    public boolean hasConditions() {
+        return !this.conditionalChoices.isEmpty();
+    }
+
+    /**
+     * @return the given states, in the order of their index in this graph
+     */
+    public DialogueState[] sortStates(Map<String, DialogueState> states) {
+        DialogueState[] sorted = new DialogueState[this.stateKeys.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = states.get(this.stateKeys[i]);
+        }
+        return sorted;
+    }
+}
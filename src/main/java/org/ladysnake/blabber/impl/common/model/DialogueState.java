@@ -67,6 +67,17 @@ public record DialogueState(
         return this.choices.get(choice).next();
     }
 
+    /**
+     * @return {@code true} if {@link #parseText} may return a state with different texts
+     */
+    public boolean hasParsableText() {
+        if (ParsableTexts.needsParsing(this.text())) return true;
+        for (DialogueChoice choice : this.choices()) {
+            if (choice.hasParsableText()) return true;
+        }
+        return false;
+    }
+
     public DialogueState parseText(@Nullable ServerCommandSource source, @Nullable Entity sender) throws CommandSyntaxException {
         List<DialogueChoice> parsedChoices = new ArrayList<>(choices().size());
         for (DialogueChoice choice : choices()) {
@@ -33,6 +33,7 @@ import org.ladysnake.blabber.api.layout.DialogueLayoutType;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public record DialogueTemplate(String start, boolean unskippable, Map<String, DialogueState> states, Map<String, DialogueIllustration> illustrations, DialogueLayout<?> layout) {
@@ -73,6 +74,68 @@ public record DialogueTemplate(String start, boolean unskippable, Map<String, Di
         );
     }
 
+    /**
+     * Parses only the states and illustrations that {@code graph} knows to contain dynamic texts, sharing the others with this template.
+     *
+     * @param graph the compiled structure of this template
+     */
+    public DialogueTemplate parseText(@Nullable ServerCommandSource source, @Nullable Entity sender, DialogueGraph graph) throws CommandSyntaxException {
+        Map<String, DialogueState> parsedStates;
+        int state = graph.nextParsableState(0);
+        if (state < 0) {
+            parsedStates = states();
+        } else {
+            parsedStates = new HashMap<>(states());
+            for (; state >= 0; state = graph.nextParsableState(state + 1)) {
+                String key = graph.getStateKey(state);
+                parsedStates.put(key, states().get(key).parseText(source, sender));
+            }
+        }
+
+        Map<String, DialogueIllustration> parsedIllustrations = this.parseIllustrations(source, sender, graph);
+        if (parsedStates == states() && parsedIllustrations == illustrations()) return this;
+
+        return new DialogueTemplate(
+                start(),
+                unskippable(),
+                parsedStates,
+                parsedIllustrations,
+                layout()
+        );
+    }
+
+    /**
+     * @param graph the compiled structure of this template
+     * @return a copy of this template with parsed illustrations, but unparsed states
+     */
+    public DialogueTemplate withParsedIllustrations(@Nullable ServerCommandSource source, @Nullable Entity sender, DialogueGraph graph) throws CommandSyntaxException {
+        Map<String, DialogueIllustration> parsedIllustrations = this.parseIllustrations(source, sender, graph);
+        if (parsedIllustrations == illustrations()) return this;
+        return new DialogueTemplate(start(), unskippable(), states(), parsedIllustrations, layout());
+    }
+
+    private Map<String, DialogueIllustration> parseIllustrations(@Nullable ServerCommandSource source, @Nullable Entity sender, DialogueGraph graph) throws CommandSyntaxException {
+        List<String> parsable = graph.getParsableIllustrations();
+        if (parsable.isEmpty()) return illustrations();
+        Map<String, DialogueIllustration> parsedIllustrations = new HashMap<>(illustrations());
+        for (String key : parsable) {
+            parsedIllustrations.put(key, illustrations().get(key).parseText(source, sender));
+        }
+        return parsedIllustrations;
+    }
+
+    /**
+     * @return a copy of this template in which the given states and illustrations replace the ones with the same keys
+     */
+    public DialogueTemplate withOverrides(Map<String, DialogueState> stateOverrides, Map<String, DialogueIllustration> illustrationOverrides) {
+        if (stateOverrides.isEmpty() && illustrationOverrides.isEmpty()) return this;
+        Map<String, DialogueState> mergedStates = new HashMap<>(states());
+        mergedStates.putAll(stateOverrides);
+        Map<String, DialogueIllustration> mergedIllustrations = new HashMap<>(illustrations());
+        mergedIllustrations.putAll(illustrationOverrides);
+        return new DialogueTemplate(start(), unskippable(), mergedStates, mergedIllustrations, layout());
+    }
+
     @Override
     public String toString() {
         return "DialogueTemplate[start=%s, states=%s, illustrations=%s%s]".formatted(start, states, illustrations, unskippable ? " (unskippable)" : "");
@@ -0,0 +1,53 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.model;
+
+import net.minecraft.text.HoverEvent;
+import net.minecraft.text.ParsableTextContent;
+import net.minecraft.text.Text;
+import net.minecraft.text.TextContent;
+import net.minecraft.text.TranslatableTextContent;
+
+/**
+ * Finds out whether {@link net.minecraft.text.Texts#parse} would actually change a text.
+ *
+ * <p>Only selector, score and NBT components get resolved when parsing, but they can be nested
+ * in siblings, translation arguments, and hover texts.
+ */
+public final class ParsableTexts {
+    public static boolean needsParsing(Text text) {
+        TextContent content = text.getContent();
+        if (content instanceof ParsableTextContent) return true;
+        if (content instanceof TranslatableTextContent translatable) {
+            for (Object arg : translatable.getArgs()) {
+                if (arg instanceof Text argText && needsParsing(argText)) return true;
+            }
+        }
+        HoverEvent hoverEvent = text.getStyle().getHoverEvent();
+        if (hoverEvent != null) {
+            Text hoverText = hoverEvent.getValue(HoverEvent.Action.SHOW_TEXT);
+            if (hoverText != null && needsParsing(hoverText)) return true;
+        }
+        for (Text sibling : text.getSiblings()) {
+            if (needsParsing(sibling)) return true;
+        }
+        return false;
+    }
+
+    private ParsableTexts() {}
+}
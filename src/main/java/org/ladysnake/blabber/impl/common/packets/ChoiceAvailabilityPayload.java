@@ -18,38 +18,39 @@
 package org.ladysnake.blabber.impl.common.packets;
 
 import io.netty.buffer.ByteBuf;
-import it.unimi.dsi.fastutil.ints.Int2BooleanMap;
-import it.unimi.dsi.fastutil.ints.Int2BooleanOpenHashMap;
 import net.minecraft.network.codec.PacketCodec;
 import net.minecraft.network.codec.PacketCodecs;
 import net.minecraft.network.packet.CustomPayload;
 import org.ladysnake.blabber.impl.common.BlabberRegistrar;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.function.IntFunction;
+import java.util.BitSet;
 
 /**
- * Represents a list of dialogue choices which availability has changed
+ * Updates the availability of conditional choices in the current dialogue.
+ *
+ * <p>Choices are identified by their {@linkplain org.ladysnake.blabber.impl.common.model.DialogueGraph#getConditionalRank(int) rank}
+ * among the conditional choices of the dialogue, so that a single bit is enough for each of them.
+ * Unless this update is a snapshot, each set bit flips the availability of a choice compared to the previous update.
+ *
+ * @param sequence the position of this update among the availability updates and {@linkplain SelectedDialogueStatePayload state selections} sent for the current dialogue
+ * @param snapshot if {@code true}, {@code choices} holds every available choice instead of the changes since the previous update
+ * @param choices the ranks of the choices that changed, or of the available choices for a snapshot
  */
-public record ChoiceAvailabilityPayload(Map<String, Int2BooleanMap> updatedChoices) implements CustomPayload {
+public record ChoiceAvailabilityPayload(int sequence, boolean snapshot, BitSet choices) implements CustomPayload {
     public static final CustomPayload.Id<ChoiceAvailabilityPayload> ID = BlabberRegistrar.payloadId("choice_availability");
-    public static final PacketCodec<ByteBuf, ChoiceAvailabilityPayload> PACKET_CODEC = PacketCodecs.map(
-            (IntFunction<Map<String, Int2BooleanMap>>) HashMap::new,
-            PacketCodecs.STRING,
-            PacketCodecs.map(Int2BooleanOpenHashMap::new, PacketCodecs.VAR_INT, PacketCodecs.BOOL)
-    ).xmap(ChoiceAvailabilityPayload::new, ChoiceAvailabilityPayload::updatedChoices);
+    public static final PacketCodec<ByteBuf, ChoiceAvailabilityPayload> PACKET_CODEC = PacketCodec.tuple(
+            PacketCodecs.VAR_INT, ChoiceAvailabilityPayload::sequence,
+            PacketCodecs.BOOL, ChoiceAvailabilityPayload::snapshot,
+            PacketCodecs.BYTE_ARRAY.xmap(BitSet::valueOf, BitSet::toByteArray), ChoiceAvailabilityPayload::choices,
+            ChoiceAvailabilityPayload::new
+    );
 
-    public ChoiceAvailabilityPayload() {
-        this(new HashMap<>());
+    public ChoiceAvailabilityPayload(int sequence, boolean snapshot) {
+        this(sequence, snapshot, new BitSet());
     }
 
     @Override
     public Id<? extends CustomPayload> getId() {
         return ID;
     }
-
-    public void markUpdated(String stateKey, int choiceIndex, boolean newValue) {
-        this.updatedChoices().computeIfAbsent(stateKey, s -> new Int2BooleanOpenHashMap()).put(choiceIndex, newValue);
-    }
 }
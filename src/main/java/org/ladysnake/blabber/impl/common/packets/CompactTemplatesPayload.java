@@ -0,0 +1,40 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.packets;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.CustomPayload;
+import org.ladysnake.blabber.impl.common.BlabberRegistrar;
+
+/**
+ * Capability flag for the {@linkplain org.ladysnake.blabber.impl.common.serialization.CompactDialogueCodecs compact template format}.
+ *
+ * <p>This payload never gets sent: clients register a receiver for it, which announces the channel to the server
+ * during configuration, and the server only uses the compact format with clients that {@linkplain net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking#canSend can receive it}.
+ */
+public record CompactTemplatesPayload() implements CustomPayload {
+    public static final CustomPayload.Id<CompactTemplatesPayload> ID = BlabberRegistrar.payloadId("compact_templates");
+    public static final CompactTemplatesPayload INSTANCE = new CompactTemplatesPayload();
+    public static final PacketCodec<ByteBuf, CompactTemplatesPayload> PACKET_CODEC = PacketCodec.unit(INSTANCE);
+
+    @Override
+    public Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.packets;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+import org.jetbrains.annotations.Nullable;
+import org.ladysnake.blabber.impl.common.BlabberRegistrar;
+import org.ladysnake.blabber.impl.common.serialization.PacketCompression;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The changes between two versions of the {@linkplain DialogueListPayload dialogue list}.
+ *
+ * <p>Clients that do not have {@code baseVersion} cannot apply the delta, and {@linkplain DialogueListRequestPayload ask for the full list} instead.
+ *
+ * @param baseVersion the version of the list these changes apply to
+ * @param version     the version of the list once these changes are applied
+ * @param changed     the ids of dialogues that were added or modified, mapped to their new hash
+ * @param removed     the ids of dialogues that are no longer available
+ * @param preEncoded  the bytes {@link #COMPRESSED_CODEC} writes for this payload, shared by every send of this payload, or {@code null} to encode it on each send
+ */
+public record DialogueListDeltaPayload(int baseVersion, int version, Map<Identifier, Long> changed, Set<Identifier> removed,
+                                       @Nullable PacketCompression.PreEncoded preEncoded) implements CustomPayload, PacketCompression.Shareable<DialogueListDeltaPayload> {
+    public static final CustomPayload.Id<DialogueListDeltaPayload> ID = BlabberRegistrar.payloadId("dialogue_list_delta");
+    public static final PacketCodec<ByteBuf, DialogueListDeltaPayload> PACKET_CODEC = PacketCodec.tuple(
+            PacketCodecs.VAR_INT, DialogueListDeltaPayload::baseVersion,
+            PacketCodecs.VAR_INT, DialogueListDeltaPayload::version,
+            DialogueListPayload.DIALOGUES_CODEC, DialogueListDeltaPayload::changed,
+            PacketCodecs.collection(HashSet::new, Identifier.PACKET_CODEC), DialogueListDeltaPayload::removed,
+            DialogueListDeltaPayload::new
+    );
+    public static final PacketCompression.CompressedCodec<PacketByteBuf, DialogueListDeltaPayload> COMPRESSED_CODEC = PacketCompression.compressed("dialogue_list_delta", PACKET_CODEC);
+
+    public DialogueListDeltaPayload(int baseVersion, int version, Map<Identifier, Long> changed, Set<Identifier> removed) {
+        this(baseVersion, version, changed, removed, null);
+    }
+
+    public static DialogueListDeltaPayload between(DialogueListPayload previous, DialogueListPayload next) {
+        Map<Identifier, Long> changed = new HashMap<>();
+        next.dialogues().forEach((id, hash) -> {
+            if (!Objects.equals(previous.dialogues().get(id), hash)) {
+                changed.put(id, hash);
+            }
+        });
+        Set<Identifier> removed = new HashSet<>(previous.dialogueIds());
+        removed.removeAll(next.dialogueIds());
+        return new DialogueListDeltaPayload(previous.version(), next.version(), changed, removed);
+    }
+
+    /**
+     * @return the full list resulting from applying this delta to {@code dialogues}
+     */
+    public Map<Identifier, Long> applyTo(Map<Identifier, Long> dialogues) {
+        Map<Identifier, Long> result = new HashMap<>(dialogues);
+        result.keySet().removeAll(this.removed);
+        result.putAll(this.changed);
+        return result;
+    }
+
+    @Override
+    public DialogueListDeltaPayload preEncode() {
+        if (this.preEncoded != null && this.preEncoded.isCurrent()) return this;
+        return new DialogueListDeltaPayload(this.baseVersion, this.version, this.changed, this.removed, COMPRESSED_CODEC.preEncode(new PacketByteBuf(Unpooled.buffer()), this));
+    }
+
+    @Override
+    public Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
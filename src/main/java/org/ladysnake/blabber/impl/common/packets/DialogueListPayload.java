@@ -18,19 +18,60 @@
 package org.ladysnake.blabber.impl.common.packets;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.PacketByteBuf;
 import net.minecraft.network.codec.PacketCodec;
 import net.minecraft.network.codec.PacketCodecs;
 import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.util.Identifier;
+import org.jetbrains.annotations.Nullable;
 import org.ladysnake.blabber.impl.common.BlabberRegistrar;
+import org.ladysnake.blabber.impl.common.serialization.PacketCompression;
 
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.IntFunction;
 
-public record DialogueListPayload(Set<Identifier> dialogueIds) implements CustomPayload {
+/**
+ * @param version    a number that changes every time the list changes, used to check whether {@linkplain DialogueListDeltaPayload deltas} apply
+ * @param dialogues  the ids of every available dialogue, mapped to a hash of their definition
+ * @param preEncoded the bytes {@link #COMPRESSED_CODEC} writes for this payload, shared by every send of this payload, or {@code null} to encode it on each send
+ */
+public record DialogueListPayload(int version, Map<Identifier, Long> dialogues, @Nullable PacketCompression.PreEncoded preEncoded) implements CustomPayload, PacketCompression.Shareable<DialogueListPayload> {
     public static final CustomPayload.Id<DialogueListPayload> ID = BlabberRegistrar.payloadId("dialogue_list");
-    public static final PacketCodec<ByteBuf, DialogueListPayload> PACKET_CODEC = Identifier.PACKET_CODEC.collect(PacketCodecs.toCollection((IntFunction<Set<Identifier>>) HashSet::new)).xmap(DialogueListPayload::new, DialogueListPayload::dialogueIds);
+    static final PacketCodec<ByteBuf, Map<Identifier, Long>> DIALOGUES_CODEC = PacketCodecs.map(
+            (IntFunction<Map<Identifier, Long>>) HashMap::new,
+            Identifier.PACKET_CODEC,
+            PacketCodec.<ByteBuf, Long>of((value, buf) -> buf.writeLong(value), ByteBuf::readLong)
+    );
+    public static final PacketCodec<ByteBuf, DialogueListPayload> PACKET_CODEC = PacketCodec.tuple(
+            PacketCodecs.VAR_INT, DialogueListPayload::version,
+            DIALOGUES_CODEC, DialogueListPayload::dialogues,
+            DialogueListPayload::new
+    );
+    public static final PacketCompression.CompressedCodec<PacketByteBuf, DialogueListPayload> COMPRESSED_CODEC = PacketCompression.compressed("dialogue_list", PACKET_CODEC);
+
+    public DialogueListPayload(int version, Map<Identifier, Long> dialogues) {
+        this(version, dialogues, null);
+    }
+
+    /**
+     * Creates a payload that gets encoded right away, for when the same list is going to be sent to many players.
+     */
+    public static DialogueListPayload preEncoded(int version, Map<Identifier, Long> dialogues) {
+        return new DialogueListPayload(version, Map.copyOf(dialogues)).preEncode();
+    }
+
+    @Override
+    public DialogueListPayload preEncode() {
+        if (this.preEncoded != null && this.preEncoded.isCurrent()) return this;
+        return new DialogueListPayload(this.version, this.dialogues, COMPRESSED_CODEC.preEncode(new PacketByteBuf(Unpooled.buffer()), this));
+    }
+
+    public Set<Identifier> dialogueIds() {
+        return this.dialogues.keySet();
+    }
 
     @Override
     public Id<? extends CustomPayload> getId() {
@@ -0,0 +1,37 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.packets;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.CustomPayload;
+import org.ladysnake.blabber.impl.common.BlabberRegistrar;
+
+/**
+ * Sent by a client that received a {@linkplain DialogueListDeltaPayload dialogue list delta} it could not apply, to get the full list instead
+ */
+public record DialogueListRequestPayload() implements CustomPayload {
+    public static final CustomPayload.Id<DialogueListRequestPayload> ID = BlabberRegistrar.payloadId("dialogue_list_request");
+    public static final DialogueListRequestPayload INSTANCE = new DialogueListRequestPayload();
+    public static final PacketCodec<ByteBuf, DialogueListRequestPayload> PACKET_CODEC = PacketCodec.unit(INSTANCE);
+
+    @Override
+    public Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
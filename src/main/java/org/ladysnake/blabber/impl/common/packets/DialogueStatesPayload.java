@@ -0,0 +1,48 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.packets;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import org.ladysnake.blabber.impl.common.BlabberRegistrar;
+import org.ladysnake.blabber.impl.common.model.DialogueState;
+
+import java.util.function.IntFunction;
+
+/**
+ * Sends states of the current dialogue that the client did not receive when the dialogue was opened
+ *
+ * @param states the new states, keyed by their index in the current dialogue's {@link org.ladysnake.blabber.impl.common.model.DialogueGraph}
+ */
+public record DialogueStatesPayload(Int2ObjectMap<DialogueState> states) implements CustomPayload {
+    public static final CustomPayload.Id<DialogueStatesPayload> ID = BlabberRegistrar.payloadId("dialogue_states");
+    public static final PacketCodec<PacketByteBuf, DialogueStatesPayload> PACKET_CODEC = PacketCodecs.map(
+            (IntFunction<Int2ObjectMap<DialogueState>>) Int2ObjectOpenHashMap::new,
+            PacketCodecs.VAR_INT,
+            DialogueState.PACKET_CODEC
+    ).xmap(DialogueStatesPayload::new, DialogueStatesPayload::states);
+
+    @Override
+    public Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
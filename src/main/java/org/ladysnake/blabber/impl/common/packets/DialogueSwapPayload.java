@@ -0,0 +1,45 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.packets;
+
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import org.ladysnake.blabber.impl.common.BlabberRegistrar;
+import org.ladysnake.blabber.impl.common.DialogueScreenHandlerFactory;
+
+/**
+ * Replaces the dialogue displayed by an open dialogue screen, without re-creating the screen
+ *
+ * @param syncId  the sync id of the screen handler to update, so that the swap does not apply to a screen that got replaced in the meantime
+ * @param opening everything needed to display the new dialogue, as if it was opened from scratch
+ */
+public record DialogueSwapPayload(int syncId, DialogueScreenHandlerFactory.DialogueOpeningData opening) implements CustomPayload {
+    public static final CustomPayload.Id<DialogueSwapPayload> ID = BlabberRegistrar.payloadId("dialogue_swap");
+    public static final PacketCodec<RegistryByteBuf, DialogueSwapPayload> PACKET_CODEC = PacketCodec.tuple(
+            PacketCodecs.VAR_INT, DialogueSwapPayload::syncId,
+            DialogueScreenHandlerFactory.DialogueOpeningData.COMPRESSED_CODEC, DialogueSwapPayload::opening,
+            DialogueSwapPayload::new
+    );
+
+    @Override
+    public Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
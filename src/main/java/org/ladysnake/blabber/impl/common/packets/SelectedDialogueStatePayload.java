@@ -23,9 +23,17 @@ import net.minecraft.network.codec.PacketCodecs;
 import net.minecraft.network.packet.CustomPayload;
 import org.ladysnake.blabber.impl.common.BlabberRegistrar;
 
-public record SelectedDialogueStatePayload(String stateKey) implements CustomPayload {
+/**
+ * @param sequence the position of this selection among the {@linkplain ChoiceAvailabilityPayload availability updates} and state selections sent for the current dialogue
+ * @param state the index of the selected state in the current dialogue's {@link org.ladysnake.blabber.impl.common.model.DialogueGraph}
+ */
+public record SelectedDialogueStatePayload(int sequence, int state) implements CustomPayload {
     public static final CustomPayload.Id<SelectedDialogueStatePayload> ID = BlabberRegistrar.payloadId("selected_dialogue_state");
-    public static final PacketCodec<ByteBuf, SelectedDialogueStatePayload> PACKET_CODEC = PacketCodecs.STRING.xmap(SelectedDialogueStatePayload::new, SelectedDialogueStatePayload::stateKey);
+    public static final PacketCodec<ByteBuf, SelectedDialogueStatePayload> PACKET_CODEC = PacketCodec.tuple(
+            PacketCodecs.VAR_INT, SelectedDialogueStatePayload::sequence,
+            PacketCodecs.VAR_INT, SelectedDialogueStatePayload::state,
+            SelectedDialogueStatePayload::new
+    );
 
     @Override
     public Id<? extends CustomPayload> getId() {
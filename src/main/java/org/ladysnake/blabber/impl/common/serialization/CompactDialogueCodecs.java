@@ -0,0 +1,257 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.serialization;
+
+import io.netty.handler.codec.DecoderException;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.text.Text;
+import net.minecraft.text.TextCodecs;
+import org.ladysnake.blabber.api.illustration.DialogueIllustration;
+import org.ladysnake.blabber.api.illustration.DialogueIllustrationType;
+import org.ladysnake.blabber.api.layout.DialogueLayoutType;
+import org.ladysnake.blabber.impl.common.model.DialogueChoice;
+import org.ladysnake.blabber.impl.common.model.DialogueChoiceCondition;
+import org.ladysnake.blabber.impl.common.model.DialogueState;
+import org.ladysnake.blabber.impl.common.model.DialogueTemplate;
+import org.ladysnake.blabber.impl.common.model.StateType;
+import org.ladysnake.blabber.impl.common.model.UnavailableAction;
+import org.ladysnake.blabber.impl.common.model.UnavailableDisplay;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Compact wire format for dialogue templates, only used with clients that announce support for it
+ * through the {@linkplain org.ladysnake.blabber.impl.common.packets.CompactTemplatesPayload capability channel}.
+ * Other clients keep receiving templates written with {@link DialogueTemplate#PACKET_CODEC}.
+ *
+ * <p>Every state key, illustration name and choice target gets written once in a string table at the start of the packet,
+ * and is then referenced by its index. Texts are deduplicated the same way, as choices like "Yes" or "Goodbye" tend to repeat a lot.
+ */
+public final class CompactDialogueCodecs {
+    public static final PacketCodec<RegistryByteBuf, DialogueTemplate> TEMPLATE = PacketCodec.of(CompactDialogueCodecs::writeTemplate, CompactDialogueCodecs::readTemplate);
+    public static final PacketCodec<PacketByteBuf, Map<String, DialogueState>> STATES = PacketCodec.of(
+            (states, buf) -> {
+                Tables tables = new Tables();
+                tables.collectStates(states);
+                tables.write(buf);
+                writeStates(tables, buf, states);
+            },
+            buf -> readStates(Tables.read(buf), buf)
+    );
+    public static final PacketCodec<RegistryByteBuf, Map<String, DialogueIllustration>> ILLUSTRATIONS = PacketCodec.of(
+            (illustrations, buf) -> {
+                Tables tables = new Tables();
+                tables.collectIllustrations(illustrations);
+                tables.write(buf);
+                writeIllustrations(tables, buf, illustrations);
+            },
+            buf -> readIllustrations(Tables.read(buf), buf)
+    );
+
+    private static void writeTemplate(DialogueTemplate template, RegistryByteBuf buf) {
+        Tables tables = new Tables();
+        tables.string(template.start());
+        tables.collectStates(template.states());
+        tables.collectIllustrations(template.illustrations());
+        tables.write(buf);
+        buf.writeVarInt(tables.string(template.start()));
+        buf.writeBoolean(template.unskippable());
+        writeStates(tables, buf, template.states());
+        writeIllustrations(tables, buf, template.illustrations());
+        DialogueLayoutType.PACKET_CODEC.encode(buf, template.layout());
+    }
+
+    private static DialogueTemplate readTemplate(RegistryByteBuf buf) {
+        Tables tables = Tables.read(buf);
+        String start = tables.getString(buf.readVarInt());
+        boolean unskippable = buf.readBoolean();
+        Map<String, DialogueState> states = readStates(tables, buf);
+        Map<String, DialogueIllustration> illustrations = readIllustrations(tables, buf);
+        return new DialogueTemplate(start, unskippable, states, illustrations, DialogueLayoutType.PACKET_CODEC.decode(buf));
+    }
+
+    private static void writeStates(Tables tables, PacketByteBuf buf, Map<String, DialogueState> states) {
+        buf.writeVarInt(states.size());
+        for (Map.Entry<String, DialogueState> entry : states.entrySet()) {
+            DialogueState state = entry.getValue();
+            buf.writeVarInt(tables.string(entry.getKey()));
+            buf.writeVarInt(tables.text(state.text()));
+            writeStrings(tables, buf, state.illustrations());
+            buf.writeVarInt(state.choices().size());
+            for (DialogueChoice choice : state.choices()) {
+                buf.writeVarInt(tables.text(choice.text()));
+                writeStrings(tables, buf, choice.illustrations());
+                buf.writeVarInt(tables.string(choice.next()));
+                buf.writeBoolean(choice.condition().isPresent());
+                if (choice.condition().isPresent()) {
+                    UnavailableAction whenUnavailable = choice.condition().get().whenUnavailable();
+                    UnavailableDisplay.PACKET_CODEC.encode(buf, whenUnavailable.display());
+                    // 0 stands for no message
+                    buf.writeVarInt(whenUnavailable.message().map(tables::text).map(i -> i + 1).orElse(0));
+                }
+            }
+            // not writing the action, the client most likely does not need to know about it
+            StateType.PACKET_CODEC.encode(buf, state.type());
+        }
+    }
+
+    private static Map<String, DialogueState> readStates(Tables tables, PacketByteBuf buf) {
+        int stateCount = buf.readVarInt();
+        Map<String, DialogueState> states = new HashMap<>(stateCount);
+        for (int i = 0; i < stateCount; i++) {
+            String key = tables.getString(buf.readVarInt());
+            Text text = tables.getText(buf.readVarInt());
+            List<String> illustrations = readStrings(tables, buf);
+            int choiceCount = buf.readVarInt();
+            List<DialogueChoice> choices = new ArrayList<>(choiceCount);
+            for (int c = 0; c < choiceCount; c++) {
+                Text choiceText = tables.getText(buf.readVarInt());
+                List<String> choiceIllustrations = readStrings(tables, buf);
+                String next = tables.getString(buf.readVarInt());
+                Optional<DialogueChoiceCondition> condition = Optional.empty();
+                if (buf.readBoolean()) {
+                    UnavailableDisplay display = UnavailableDisplay.PACKET_CODEC.decode(buf);
+                    int message = buf.readVarInt();
+                    Optional<Text> unavailableMessage = message == 0 ? Optional.empty() : Optional.of(tables.getText(message - 1));
+                    condition = Optional.of(new DialogueChoiceCondition(DialogueChoiceCondition.DUMMY_CONDITION, new UnavailableAction(display, unavailableMessage)));
+                }
+                choices.add(new DialogueChoice(choiceText, choiceIllustrations, next, condition));
+            }
+            states.put(key, new DialogueState(text, illustrations, choices, Optional.empty(), StateType.PACKET_CODEC.decode(buf)));
+        }
+        return states;
+    }
+
+    private static void writeIllustrations(Tables tables, RegistryByteBuf buf, Map<String, DialogueIllustration> illustrations) {
+        buf.writeVarInt(illustrations.size());
+        for (Map.Entry<String, DialogueIllustration> entry : illustrations.entrySet()) {
+            buf.writeVarInt(tables.string(entry.getKey()));
+            DialogueIllustrationType.PACKET_CODEC.encode(buf, entry.getValue());
+        }
+    }
+
+    private static Map<String, DialogueIllustration> readIllustrations(Tables tables, RegistryByteBuf buf) {
+        int illustrationCount = buf.readVarInt();
+        Map<String, DialogueIllustration> illustrations = new HashMap<>(illustrationCount);
+        for (int i = 0; i < illustrationCount; i++) {
+            illustrations.put(tables.getString(buf.readVarInt()), DialogueIllustrationType.PACKET_CODEC.decode(buf));
+        }
+        return illustrations;
+    }
+
+    private static void writeStrings(Tables tables, PacketByteBuf buf, List<String> strings) {
+        buf.writeVarInt(strings.size());
+        for (String s : strings) {
+            buf.writeVarInt(tables.string(s));
+        }
+    }
+
+    private static List<String> readStrings(Tables tables, PacketByteBuf buf) {
+        int size = buf.readVarInt();
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(tables.getString(buf.readVarInt()));
+        }
+        return strings;
+    }
+
+    /**
+     * The strings and texts of a single packet, in the order they were first encountered
+     */
+    private static final class Tables {
+        private final List<String> strings = new ArrayList<>();
+        private final List<Text> texts = new ArrayList<>();
+        private final Object2IntMap<String> stringIndices = new Object2IntOpenHashMap<>();
+        private final Object2IntMap<Text> textIndices = new Object2IntOpenHashMap<>();
+
+        static Tables read(PacketByteBuf buf) {
+            Tables tables = new Tables();
+            int stringCount = buf.readVarInt();
+            for (int i = 0; i < stringCount; i++) {
+                tables.strings.add(buf.readString());
+            }
+            int textCount = buf.readVarInt();
+            for (int i = 0; i < textCount; i++) {
+                tables.texts.add(TextCodecs.PACKET_CODEC.decode(buf));
+            }
+            return tables;
+        }
+
+        void write(PacketByteBuf buf) {
+            buf.writeVarInt(this.strings.size());
+            for (String s : this.strings) {
+                buf.writeString(s);
+            }
+            buf.writeVarInt(this.texts.size());
+            for (Text text : this.texts) {
+                TextCodecs.PACKET_CODEC.encode(buf, text);
+            }
+        }
+
+        int string(String s) {
+            return this.stringIndices.computeIntIfAbsent(s, k -> {
+                this.strings.add(k);
+                return this.strings.size() - 1;
+            });
+        }
+
+        int text(Text text) {
+            return this.textIndices.computeIntIfAbsent(text, k -> {
+                this.texts.add(k);
+                return this.texts.size() - 1;
+            });
+        }
+
+        String getString(int index) {
+            if (index < 0 || index >= this.strings.size()) throw new DecoderException("Invalid string index " + index);
+            return this.strings.get(index);
+        }
+
+        Text getText(int index) {
+            if (index < 0 || index >= this.texts.size()) throw new DecoderException("Invalid text index " + index);
+            return this.texts.get(index);
+        }
+
+        void collectStates(Map<String, DialogueState> states) {
+            for (Map.Entry<String, DialogueState> entry : states.entrySet()) {
+                DialogueState state = entry.getValue();
+                this.string(entry.getKey());
+                this.text(state.text());
+                state.illustrations().forEach(this::string);
+                for (DialogueChoice choice : state.choices()) {
+                    this.text(choice.text());
+                    choice.illustrations().forEach(this::string);
+                    this.string(choice.next());
+                    choice.condition().flatMap(c -> c.whenUnavailable().message()).ifPresent(this::text);
+                }
+            }
+        }
+
+        void collectIllustrations(Map<String, DialogueIllustration> illustrations) {
+            illustrations.keySet().forEach(this::string);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.serialization;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.JsonOps;
+import org.ladysnake.blabber.api.illustration.DialogueIllustration;
+import org.ladysnake.blabber.api.illustration.DialogueIllustrationType;
+import org.ladysnake.blabber.api.layout.DialogueLayout;
+import org.ladysnake.blabber.api.layout.DialogueLayoutType;
+import org.ladysnake.blabber.impl.common.model.DialogueState;
+import org.ladysnake.blabber.impl.common.model.DialogueTemplate;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes a {@link DialogueTemplate} straight from a {@link JsonReader}.
+ *
+ * <p>This is equivalent to running {@link DialogueTemplate#CODEC} on the whole document,
+ * except that only one state or illustration is turned into a JSON tree at a time.
+ * Very large dialogues therefore never need to be held in memory twice.
+ */
+public final class DialogueTemplateReader {
+    public static DataResult<DialogueTemplate> read(JsonReader reader) throws IOException {
+        try {
+            return DataResult.success(readTemplate(reader));
+        } catch (FieldDecodingException e) {
+            return DataResult.error(e::getMessage);
+        } catch (IllegalStateException e) {
+            // JsonReader throws ISEs when it meets an unexpected token
+            throw new JsonParseException(e.getMessage(), e);
+        }
+    }
+
+    private static DialogueTemplate readTemplate(JsonReader reader) throws IOException {
+        String start = null;
+        boolean unskippable = false;
+        Map<String, DialogueState> states = null;
+        Map<String, DialogueIllustration> illustrations = Collections.emptyMap();
+        DialogueLayout<?> layout = DialogueLayout.DEFAULT;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                // JsonOps treats null values as missing fields
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "start_at" -> start = decode(Codec.STRING, JsonParser.parseReader(reader), name);
+                case "unskippable" -> unskippable = decode(Codec.BOOL, JsonParser.parseReader(reader), name);
+                case "states" -> states = readMap(reader, DialogueState.CODEC, name);
+                case "illustrations" -> illustrations = readMap(reader, DialogueIllustrationType.CODEC, name);
+                case "layout" -> layout = decode(DialogueLayoutType.CODEC, JsonParser.parseReader(reader), name);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (start == null) throw new FieldDecodingException("No key start_at in dialogue");
+        if (states == null) throw new FieldDecodingException("No key states in dialogue");
+        return new DialogueTemplate(start, unskippable, states, illustrations, layout);
+    }
+
+    private static <T> Map<String, T> readMap(JsonReader reader, Codec<T> valueCodec, String path) throws IOException {
+        Map<String, T> map = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            map.put(key, decode(valueCodec, JsonParser.parseReader(reader), path + "." + key));
+        }
+        reader.endObject();
+        return map;
+    }
+
+    private static <T> T decode(Codec<T> codec, JsonElement json, String path) {
+        return codec.parse(JsonOps.INSTANCE, json).getOrThrow(message -> new FieldDecodingException(path + ": " + message));
+    }
+
+    private static final class FieldDecodingException extends RuntimeException {
+        FieldDecodingException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
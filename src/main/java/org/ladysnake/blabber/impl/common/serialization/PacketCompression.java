@@ -0,0 +1,279 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DecoderException;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.encoding.VarInts;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional deflate compression for Blabber's own packets, on top of whatever the connection does.
+ *
+ * <p>Each compressed value is prefixed with its uncompressed size, or {@code 0} if it was written as is.
+ * Only the server decides whether to compress, so clients do not need any configuration to read the result.
+ */
+public final class PacketCompression {
+    public static final int DISABLED = -1;
+    /**
+     * Same limit as vanilla's compressed packets, to avoid allocating absurd amounts of memory for malformed packets
+     */
+    private static final int MAX_UNCOMPRESSED_SIZE = 8388608;
+
+    private static volatile int threshold = DISABLED;
+    private static volatile int level = Deflater.DEFAULT_COMPRESSION;
+    private static final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * @param threshold the minimum size in bytes for a value to get compressed, or {@link #DISABLED}
+     * @param level the deflate compression level, from 0 to 9
+     */
+    public static void configure(int threshold, int level) {
+        PacketCompression.threshold = threshold;
+        PacketCompression.level = level;
+    }
+
+    public static <V> CompressedCodec<PacketByteBuf, V> compressed(String name, PacketCodec<? super PacketByteBuf, V> codec) {
+        return new CompressedCodec<>(name, codec, (buf, raw) -> new PacketByteBuf(raw));
+    }
+
+    public static <V> CompressedCodec<RegistryByteBuf, V> compressedWithRegistries(String name, PacketCodec<? super RegistryByteBuf, V> codec) {
+        return new CompressedCodec<>(name, codec, (buf, raw) -> new RegistryByteBuf(raw, buf.getRegistryManager()));
+    }
+
+    public static final class CompressedCodec<B extends ByteBuf, V> implements PacketCodec<B, V> {
+        private final Stats stats;
+        private final PacketCodec<? super B, V> codec;
+        private final BiFunction<B, ByteBuf, B> wrapper;
+
+        /**
+         * @param name the name under which to record {@linkplain PacketCompression#getStats() statistics} for the values written by this codec
+         * @param wrapper creates a buffer of the right type around raw bytes, given the buffer being read or written
+         */
+        private CompressedCodec(String name, PacketCodec<? super B, V> codec, BiFunction<B, ByteBuf, B> wrapper) {
+            this.stats = PacketCompression.stats.computeIfAbsent(name, n -> new Stats());
+            this.codec = codec;
+            this.wrapper = wrapper;
+        }
+
+        @Override
+        public V decode(B buf) {
+            int uncompressedSize = VarInts.read(buf);
+            if (uncompressedSize == 0) {
+                return this.codec.decode(buf);
+            }
+            if (uncompressedSize < 0 || uncompressedSize > MAX_UNCOMPRESSED_SIZE) {
+                throw new DecoderException("Badly compressed packet - size of " + uncompressedSize + " is outside of the protocol range of 1 to " + MAX_UNCOMPRESSED_SIZE);
+            }
+            int compressedSize = VarInts.read(buf);
+            // Checked before allocating anything, as the declared length comes straight from the other side
+            if (compressedSize <= 0 || compressedSize > buf.readableBytes()) {
+                throw new DecoderException("Badly compressed packet - compressed size of " + compressedSize + " does not fit in the " + buf.readableBytes() + " remaining bytes");
+            }
+            byte[] compressed = new byte[compressedSize];
+            buf.readBytes(compressed);
+            return this.codec.decode(this.wrapper.apply(buf, Unpooled.wrappedBuffer(inflate(compressed, uncompressedSize))));
+        }
+
+        @Override
+        public void encode(B buf, V value) {
+            PreEncoded encoded = value instanceof PreEncodable preEncodable ? preEncodable.preEncoded() : null;
+            if (encoded != null && encoded.isCurrent()) {
+                buf.writeBytes(encoded.bytes());
+                this.stats.record(encoded.uncompressedSize(), encoded.bytes().length);
+            } else {
+                int start = buf.writerIndex();
+                int uncompressedSize = this.write(buf, value, PacketCompression.threshold, PacketCompression.level);
+                this.stats.record(uncompressedSize, buf.writerIndex() - start);
+            }
+        }
+
+        /**
+         * Writes a value the way this codec would, so that it can be {@linkplain PreEncodable written as is} to any number of packets.
+         *
+         * @param scratch an empty buffer to write into, which gets released
+         */
+        public PreEncoded preEncode(B scratch, V value) {
+            int threshold = PacketCompression.threshold;
+            int level = PacketCompression.level;
+            try {
+                int uncompressedSize = this.write(scratch, value, threshold, level);
+                byte[] bytes = new byte[scratch.readableBytes()];
+                scratch.readBytes(bytes);
+                return new PreEncoded(bytes, uncompressedSize, threshold, level);
+            } finally {
+                scratch.release();
+            }
+        }
+
+        /**
+         * @return the size of the value before compression
+         */
+        private int write(B buf, V value, int threshold, int level) {
+            if (threshold == DISABLED) {
+                // Nothing to compress, so the value can go straight into the packet
+                VarInts.write(buf, 0);
+                int start = buf.writerIndex();
+                this.codec.encode(buf, value);
+                return buf.writerIndex() - start;
+            }
+            ByteBuf raw = Unpooled.buffer();
+            try {
+                this.codec.encode(this.wrapper.apply(buf, raw), value);
+                int uncompressedSize = raw.readableBytes();
+                byte[] compressed = uncompressedSize > 0 && uncompressedSize >= threshold ? deflate(raw, level) : null;
+                if (compressed != null && compressed.length < uncompressedSize) {
+                    VarInts.write(buf, uncompressedSize);
+                    VarInts.write(buf, compressed.length);
+                    buf.writeBytes(compressed);
+                } else {
+                    VarInts.write(buf, 0);
+                    buf.writeBytes(raw);
+                }
+                return uncompressedSize;
+            } finally {
+                raw.release();
+            }
+        }
+    }
+
+    /**
+     * The bytes a {@link CompressedCodec} writes for a value, computed ahead of time for values that get sent to many players.
+     *
+     * @param threshold the compression threshold that was in effect when the bytes got written
+     * @param level the compression level that was in effect when the bytes got written
+     */
+    public record PreEncoded(byte[] bytes, int uncompressedSize, int threshold, int level) {
+        /**
+         * @return {@code false} if the compression settings changed since these bytes were written, in which case they should be written again
+         */
+        public boolean isCurrent() {
+            return this.threshold == PacketCompression.threshold && this.level == PacketCompression.level;
+        }
+    }
+
+    /**
+     * A value that can carry its own {@linkplain PreEncoded pre-encoded bytes}, which compressed codecs then write as is
+     */
+    public interface PreEncodable {
+        @Nullable PreEncoded preEncoded();
+    }
+
+    /**
+     * A pre-encodable value that does not need any context to be encoded, so that it can be pre-encoded once and shared between recipients
+     *
+     * @param <V> the type of the value
+     */
+    public interface Shareable<V extends Shareable<V>> extends PreEncodable {
+        /**
+         * @return this value with up-to-date pre-encoded bytes, which may be this value itself
+         */
+        V preEncode();
+    }
+
+    private static byte[] deflate(ByteBuf raw, int level) {
+        byte[] input = new byte[raw.readableBytes()];
+        raw.getBytes(raw.readerIndex(), input);
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                output.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int uncompressedSize) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] output = new byte[uncompressedSize];
+            int inflated = inflater.inflate(output);
+            if (inflated != uncompressedSize || !inflater.finished()) {
+                throw new DecoderException("Badly compressed packet - actual length of uncompressed payload " + inflated + " does not match declared size " + uncompressedSize);
+            }
+            return output;
+        } catch (DataFormatException e) {
+            throw new DecoderException("Badly compressed packet", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return statistics for every compressed codec, sorted by name
+     */
+    public static Map<String, Stats> getStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(stats));
+    }
+
+    public static void resetStats() {
+        stats.values().forEach(Stats::reset);
+    }
+
+    public static final class Stats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder uncompressedBytes = new LongAdder();
+        private final LongAdder sentBytes = new LongAdder();
+
+        void record(int uncompressedSize, int sentSize) {
+            this.count.increment();
+            this.uncompressedBytes.add(uncompressedSize);
+            this.sentBytes.add(sentSize);
+        }
+
+        void reset() {
+            this.count.reset();
+            this.uncompressedBytes.reset();
+            this.sentBytes.reset();
+        }
+
+        public long count() {
+            return this.count.sum();
+        }
+
+        public long uncompressedBytes() {
+            return this.uncompressedBytes.sum();
+        }
+
+        public long sentBytes() {
+            return this.sentBytes.sum();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.settings;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.gamerule.v1.GameRuleFactory;
+import net.fabricmc.fabric.api.gamerule.v1.GameRuleRegistry;
+import net.fabricmc.fabric.api.gamerule.v1.rule.EnumRule;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.GameRules;
+import org.ladysnake.blabber.impl.common.DialogueRegistry;
+import org.ladysnake.blabber.impl.common.serialization.PacketCompression;
+
+/**
+ * Server-wide settings, as opposed to the per-player {@link BlabberSetting}s
+ */
+public final class BlabberGameRules {
+    public static final GameRules.Key<EnumRule<ConditionEvaluationScope>> CONDITION_SCOPE = GameRuleRegistry.register(
+            "blabberConditionScope",
+            GameRules.Category.MISC,
+            GameRuleFactory.createEnumRule(ConditionEvaluationScope.ALL)
+    );
+    /**
+     * How many ticks pass between two evaluations of a player's choice conditions. Each player gets evaluated on a different tick.
+     */
+    public static final GameRules.Key<GameRules.IntRule> CONDITION_INTERVAL = GameRuleRegistry.register(
+            "blabberConditionInterval",
+            GameRules.Category.MISC,
+            GameRuleFactory.createIntRule(1, 1)
+    );
+    /**
+     * If {@code true}, choice conditions only get re-evaluated when something they are likely to depend on changes,
+     * instead of on every {@linkplain #CONDITION_INTERVAL interval}.
+     *
+     * <p>Changes to the time of day or the weather do not count, so conditions depending on them only stay up-to-date
+     * if they are world-scoped, which still get re-evaluated on every interval, or if something calls
+     * {@link org.ladysnake.blabber.Blabber#invalidateConditions}.
+     */
+    public static final GameRules.Key<GameRules.BooleanRule> EVENT_DRIVEN_CONDITIONS = GameRuleRegistry.register(
+            "blabberEventDrivenConditions",
+            GameRules.Category.MISC,
+            GameRuleFactory.createBooleanRule(false)
+    );
+    /**
+     * If {@code true}, dialogue states only get their text parsed when the player gets close to them,
+     * and they are sent to the client progressively instead of all at once
+     */
+    public static final GameRules.Key<GameRules.BooleanRule> LAZY_DIALOGUE_TEXT = GameRuleRegistry.register(
+            "blabberLazyDialogueText",
+            GameRules.Category.MISC,
+            GameRuleFactory.createBooleanRule(false)
+    );
+    /**
+     * If {@code true}, opening a dialogue only sends the current state and the ones directly reachable from it,
+     * and further states get sent as the player advances. This is always the case with {@link #LAZY_DIALOGUE_TEXT}.
+     */
+    public static final GameRules.Key<GameRules.BooleanRule> INCREMENTAL_DIALOGUE_SYNC = GameRuleRegistry.register(
+            "blabberIncrementalDialogueSync",
+            GameRules.Category.MISC,
+            GameRuleFactory.createBooleanRule(false)
+    );
+
+    /**
+     * The minimum size in bytes for Blabber's larger packets to get compressed, or -1 to never compress them
+     */
+    public static final GameRules.Key<GameRules.IntRule> COMPRESSION_THRESHOLD = GameRuleRegistry.register(
+            "blabberCompressionThreshold",
+            GameRules.Category.MISC,
+            GameRuleFactory.createIntRule(PacketCompression.DISABLED, PacketCompression.DISABLED, Integer.MAX_VALUE, (server, rule) -> updateCompression(server))
+    );
+    /**
+     * The deflate level used for packets above the {@linkplain #COMPRESSION_THRESHOLD compression threshold}, from 0 (fastest) to 9 (smallest)
+     */
+    public static final GameRules.Key<GameRules.IntRule> COMPRESSION_LEVEL = GameRuleRegistry.register(
+            "blabberCompressionLevel",
+            GameRules.Category.MISC,
+            GameRuleFactory.createIntRule(6, 0, 9, (server, rule) -> updateCompression(server))
+    );
+
+    public static void init() {
+        // Packets get encoded on network threads, which cannot safely read gamerules
+        ServerLifecycleEvents.SERVER_STARTED.register(BlabberGameRules::updateCompression);
+    }
+
+    private static void updateCompression(MinecraftServer server) {
+        GameRules gameRules = server.getGameRules();
+        PacketCompression.configure(gameRules.getInt(COMPRESSION_THRESHOLD), gameRules.getInt(COMPRESSION_LEVEL));
+        DialogueRegistry.refreshListPayload();
+    }
+
+    private BlabberGameRules() {}
+}
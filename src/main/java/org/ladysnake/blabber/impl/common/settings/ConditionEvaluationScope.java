@@ -0,0 +1,37 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.settings;
+
+/**
+ * Which conditional choices of a dialogue get re-tested when updating availability
+ */
+public enum ConditionEvaluationScope {
+    /**
+     * Only the choices of the state the player is currently in
+     */
+    CURRENT_STATE,
+    /**
+     * The choices of the current state, and of every state directly reachable from it
+     */
+    SUCCESSORS,
+    /**
+     * Every choice in the dialogue, which is the default so that the availability of states reached
+     * through commands or actions stays up-to-date
+     */
+    ALL
+}
@@ -0,0 +1,33 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.mixin;
+
+import net.minecraft.scoreboard.ServerScoreboard;
+import org.ladysnake.blabber.impl.common.PlayerDialogueTracker;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ServerScoreboard.class)
+public abstract class ServerScoreboardMixin {
+    @Inject(method = {"updateScore", "onScoreRemoved", "onScoreHolderRemoved"}, at = @At("RETURN"))
+    private void invalidateDialogueConditions(CallbackInfo ci) {
+        PlayerDialogueTracker.onScoreboardUpdate();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common;
+
+import net.minecraft.util.Identifier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+public class DialogueTemplateCacheTest {
+    @Test
+    public void outdatedEntriesAreMisses() {
+        DialogueTemplateCache<String> cache = new DialogueTemplateCache<>();
+        Identifier id = Identifier.of("blabber", "test");
+        cache.put(id, 1L, "a");
+        Assertions.assertEquals("a", cache.get(id, 1L));
+        Assertions.assertNull(cache.get(id, 2L));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesGetEvicted() {
+        DialogueTemplateCache<String> cache = new DialogueTemplateCache<>();
+        for (int i = 0; i < DialogueTemplateCache.CAPACITY; i++) {
+            cache.put(Identifier.of("blabber", "test_" + i), i, "value");
+        }
+        Assertions.assertNotNull(cache.get(Identifier.of("blabber", "test_0"), 0L));
+        cache.put(Identifier.of("blabber", "extra"), 0L, "value");
+        Assertions.assertNotNull(cache.get(Identifier.of("blabber", "test_0"), 0L));
+        Assertions.assertNull(cache.get(Identifier.of("blabber", "test_1"), 1L));
+    }
+
+    @Test
+    public void reloadsEvictChangedEntries() {
+        DialogueTemplateCache<String> cache = new DialogueTemplateCache<>();
+        Identifier kept = Identifier.of("blabber", "kept");
+        Identifier changed = Identifier.of("blabber", "changed");
+        Identifier removed = Identifier.of("blabber", "removed");
+        cache.put(kept, 1L, "a");
+        cache.put(changed, 1L, "b");
+        cache.put(removed, 1L, "c");
+        cache.retainAll(Map.of(kept, 1L, changed, 2L));
+        Assertions.assertEquals("a", cache.get(kept, 1L));
+        Assertions.assertNull(cache.get(changed, 1L));
+        Assertions.assertNull(cache.get(removed, 1L));
+    }
+}
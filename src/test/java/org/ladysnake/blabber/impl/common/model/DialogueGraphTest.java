@@ -0,0 +1,130 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.mojang.serialization.JsonOps;
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.entity.Entity;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.test.GameTestException;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.ladysnake.blabber.api.illustration.DialogueIllustration;
+import org.ladysnake.blabber.api.illustration.DialogueIllustrationType;
+
+import java.io.InputStreamReader;
+import java.util.Map;
+import java.util.Objects;
+
+public class DialogueGraphTest {
+    @BeforeAll
+    public static void setup() {
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+    }
+
+    @Test
+    public void statesAreIndexedInKeyOrder() {
+        DialogueGraph graph = DialogueGraph.compile(loadDialogue("/conditional_dialogue.json"));
+        Assertions.assertEquals(3, graph.stateCount());
+        Assertions.assertEquals("bargain", graph.getStateKey(0));
+        Assertions.assertEquals("end", graph.getStateKey(1));
+        Assertions.assertEquals("start", graph.getStateKey(2));
+        Assertions.assertEquals(2, graph.start());
+        Assertions.assertEquals(DialogueGraph.NO_STATE, graph.getStateIndex("nonexistent"));
+    }
+
+    @Test
+    public void choicesAreResolved() {
+        DialogueGraph graph = DialogueGraph.compile(loadDialogue("/conditional_dialogue.json"));
+        int start = graph.getStateIndex("start");
+        int bargain = graph.getStateIndex("bargain");
+        int end = graph.getStateIndex("end");
+        Assertions.assertEquals(2, graph.getChoiceCount(start));
+        Assertions.assertEquals(0, graph.getChoiceCount(end));
+        Assertions.assertEquals(end, graph.getNextState(start, 0));
+        Assertions.assertEquals(bargain, graph.getNextState(start, 1));
+        Assertions.assertFalse(graph.isConditional(start, 0));
+        Assertions.assertTrue(graph.isConditional(bargain, 0));
+        Assertions.assertTrue(graph.isConditional(bargain, 1));
+        Assertions.assertTrue(graph.hasConditions());
+    }
+
+    @Test
+    public void conditionalChoicesAreRanked() {
+        DialogueGraph graph = DialogueGraph.compile(loadDialogue("/conditional_dialogue.json"));
+        int bargain = graph.getChoiceOffset(graph.getStateIndex("bargain"));
+        int start = graph.getChoiceOffset(graph.getStateIndex("start"));
+        Assertions.assertEquals(0, graph.getConditionalRank(bargain));
+        Assertions.assertEquals(1, graph.getConditionalRank(bargain + 1));
+        // Unconditional choices share the rank of the next conditional one
+        Assertions.assertEquals(2, graph.getConditionalRank(start));
+        Assertions.assertEquals(2, graph.getConditionalRank(start + 1));
+    }
+
+    @Test
+    public void parsableTextsAreDetected() {
+        DialogueGraph graph = DialogueGraph.compile(loadDialogue("/dynamic_dialogue.json"));
+        Assertions.assertFalse(graph.hasParsableText(graph.getStateIndex("static")));
+        Assertions.assertTrue(graph.hasParsableText(graph.getStateIndex("selector")));
+        Assertions.assertTrue(graph.hasParsableText(graph.getStateIndex("hover")));
+        Assertions.assertTrue(graph.hasParsableText(graph.getStateIndex("unavailable")));
+    }
+
+    @Test
+    public void staticStatesAreShared() throws Exception {
+        DialogueTemplate template = loadDialogue("/conditional_dialogue.json");
+        DialogueTemplate parsed = template.parseText(null, null, DialogueGraph.compile(template));
+        for (String key : template.states().keySet()) {
+            Assertions.assertSame(template.states().get(key), parsed.states().get(key));
+        }
+    }
+
+    @Test
+    public void onlyDynamicIllustrationsGetParsed() throws Exception {
+        DialogueTemplate loaded = loadDialogue("/conditional_dialogue.json");
+        DialogueTemplate staticTemplate = new DialogueTemplate(loaded.start(), false, loaded.states(), Map.of("static", new TestIllustration(false)), loaded.layout());
+        Assertions.assertSame(staticTemplate, staticTemplate.parseText(null, null, DialogueGraph.compile(staticTemplate)));
+
+        DialogueTemplate dynamicTemplate = new DialogueTemplate(loaded.start(), false, loaded.states(), Map.of("static", new TestIllustration(false), "dynamic", new TestIllustration(true)), loaded.layout());
+        DialogueTemplate parsed = dynamicTemplate.parseText(null, null, DialogueGraph.compile(dynamicTemplate));
+        Assertions.assertSame(dynamicTemplate.illustrations().get("static"), parsed.illustrations().get("static"));
+        Assertions.assertNotSame(dynamicTemplate.illustrations().get("dynamic"), parsed.illustrations().get("dynamic"));
+    }
+
+    private static DialogueTemplate loadDialogue(String name) {
+        return DialogueTemplate.CODEC.parse(JsonOps.INSTANCE, new Gson().fromJson(new InputStreamReader(Objects.requireNonNull(DialogueGraphTest.class.getResourceAsStream(name))), JsonElement.class)).getOrThrow(GameTestException::new);
+    }
+
+    private record TestIllustration(boolean hasParsableText) implements DialogueIllustration {
+        @Override
+        public DialogueIllustrationType<? extends DialogueIllustration> getType() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DialogueIllustration parseText(@Nullable ServerCommandSource source, @Nullable Entity sender) {
+            return new TestIllustration(this.hasParsableText);
+        }
+    }
+}
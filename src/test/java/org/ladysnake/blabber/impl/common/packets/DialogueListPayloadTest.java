@@ -0,0 +1,93 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.packets;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.util.Identifier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ladysnake.blabber.impl.common.serialization.PacketCompression;
+
+import java.util.Map;
+import java.util.Set;
+
+public class DialogueListPayloadTest {
+    private static final Map<Identifier, Long> DIALOGUES = Map.of(
+            Identifier.of("blabber", "mountain_king"), 42L,
+            Identifier.of("blabber", "perception_check"), -7L
+    );
+
+    @AfterEach
+    public void reset() {
+        PacketCompression.configure(PacketCompression.DISABLED, 6);
+    }
+
+    @Test
+    public void preEncodedPayloadCanBeSentRepeatedly() {
+        DialogueListPayload payload = DialogueListPayload.preEncoded(3, DIALOGUES);
+        for (int i = 0; i < 3; i++) {
+            PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+            DialogueListPayload.COMPRESSED_CODEC.encode(buf, payload);
+            DialogueListPayload decoded = DialogueListPayload.COMPRESSED_CODEC.decode(buf);
+            Assertions.assertEquals(3, decoded.version());
+            Assertions.assertEquals(DIALOGUES, decoded.dialogues());
+            Assertions.assertEquals(0, buf.readableBytes());
+        }
+    }
+
+    @Test
+    public void preEncodedPayloadMatchesRegularEncoding() {
+        PacketByteBuf expected = new PacketByteBuf(Unpooled.buffer());
+        DialogueListPayload.COMPRESSED_CODEC.encode(expected, new DialogueListPayload(3, DIALOGUES));
+        PacketByteBuf actual = new PacketByteBuf(Unpooled.buffer());
+        DialogueListPayload.COMPRESSED_CODEC.encode(actual, DialogueListPayload.preEncoded(3, DIALOGUES));
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void preEncodedPayloadFollowsCompressionChanges() {
+        DialogueListPayload payload = DialogueListPayload.preEncoded(3, DIALOGUES);
+        PacketCompression.configure(1, 6);
+        DialogueListPayload updated = payload.preEncode();
+        Assertions.assertNotSame(payload, updated);
+        Assertions.assertSame(updated, updated.preEncode());
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        DialogueListPayload.COMPRESSED_CODEC.encode(buf, payload);
+        Assertions.assertEquals(DIALOGUES, DialogueListPayload.COMPRESSED_CODEC.decode(buf).dialogues());
+    }
+
+    @Test
+    public void deltaTurnsPreviousListIntoNextOne() {
+        Map<Identifier, Long> next = Map.of(
+                Identifier.of("blabber", "mountain_king"), 43L,
+                Identifier.of("blabber", "remnant_choice"), 12L
+        );
+        DialogueListDeltaPayload delta = DialogueListDeltaPayload.between(new DialogueListPayload(3, DIALOGUES), new DialogueListPayload(4, next));
+        Assertions.assertEquals(3, delta.baseVersion());
+        Assertions.assertEquals(4, delta.version());
+        Assertions.assertEquals(Set.of(Identifier.of("blabber", "perception_check")), delta.removed());
+        Assertions.assertEquals(next, delta.applyTo(DIALOGUES));
+
+        ByteBuf buf = Unpooled.buffer();
+        DialogueListDeltaPayload.PACKET_CODEC.encode(buf, delta);
+        Assertions.assertEquals(delta, DialogueListDeltaPayload.PACKET_CODEC.decode(buf));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.mojang.serialization.JsonOps;
+import io.netty.buffer.Unpooled;
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.test.GameTestException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.ladysnake.blabber.impl.common.model.DialogueChoice;
+import org.ladysnake.blabber.impl.common.model.DialogueState;
+import org.ladysnake.blabber.impl.common.model.DialogueTemplate;
+
+import java.io.InputStreamReader;
+import java.util.Map;
+import java.util.Objects;
+
+public class CompactDialogueCodecsTest {
+    @BeforeAll
+    public static void setup() {
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+    }
+
+    @Test
+    public void statesSurviveRoundTrip() {
+        Map<String, DialogueState> states = loadDialogue("/conditional_dialogue.json").states();
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        CompactDialogueCodecs.STATES.encode(buf, states);
+        Map<String, DialogueState> decoded = CompactDialogueCodecs.STATES.decode(buf);
+        Assertions.assertEquals(0, buf.readableBytes());
+        Assertions.assertEquals(states.keySet(), decoded.keySet());
+        for (Map.Entry<String, DialogueState> entry : states.entrySet()) {
+            DialogueState expected = entry.getValue();
+            DialogueState actual = decoded.get(entry.getKey());
+            Assertions.assertEquals(expected.text(), actual.text());
+            Assertions.assertEquals(expected.illustrations(), actual.illustrations());
+            Assertions.assertEquals(expected.type(), actual.type());
+            Assertions.assertEquals(expected.choices().size(), actual.choices().size());
+            for (int i = 0; i < expected.choices().size(); i++) {
+                DialogueChoice expectedChoice = expected.choices().get(i);
+                DialogueChoice actualChoice = actual.choices().get(i);
+                Assertions.assertEquals(expectedChoice.text(), actualChoice.text());
+                Assertions.assertEquals(expectedChoice.next(), actualChoice.next());
+                Assertions.assertEquals(expectedChoice.condition().map(c -> c.whenUnavailable()), actualChoice.condition().map(c -> c.whenUnavailable()));
+            }
+        }
+    }
+
+    private static DialogueTemplate loadDialogue(String name) {
+        return DialogueTemplate.CODEC.parse(JsonOps.INSTANCE, new Gson().fromJson(new InputStreamReader(Objects.requireNonNull(CompactDialogueCodecsTest.class.getResourceAsStream(name))), JsonElement.class)).getOrThrow(GameTestException::new);
+    }
+}
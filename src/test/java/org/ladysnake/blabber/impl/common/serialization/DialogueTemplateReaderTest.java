@@ -0,0 +1,128 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.mojang.serialization.JsonOps;
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.test.GameTestException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.ladysnake.blabber.impl.common.model.DialogueTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+public class DialogueTemplateReaderTest {
+    @BeforeAll
+    public static void setup() {
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"/conditional_dialogue.json", "/incomplete_dialogue.json", "/invalid_reference.json", "/looping_dialogue.json"})
+    public void streamingDecodingMatchesCodec(String name) throws IOException {
+        DialogueTemplate expected = decodeWithCodec(readResource(name));
+        DialogueTemplate actual = decodeStreaming(readResource(name));
+        Assertions.assertEquals(expected.start(), actual.start());
+        Assertions.assertEquals(expected.unskippable(), actual.unskippable());
+        Assertions.assertEquals(expected.states(), actual.states(), "Streaming decoding should produce the same states as the codec");
+        Assertions.assertEquals(expected.illustrations().keySet(), actual.illustrations().keySet());
+        Assertions.assertEquals(expected.layout(), actual.layout());
+    }
+
+    @Test
+    public void streamingDecodingReportsMissingFields() throws IOException {
+        Assertions.assertTrue(DialogueTemplateReader.read(new JsonReader(new StringReader("{\"states\": {}}"))).isError());
+        Assertions.assertTrue(DialogueTemplateReader.read(new JsonReader(new StringReader("{\"start_at\": \"a\"}"))).isError());
+    }
+
+    /**
+     * Compares the time and memory spent decoding a large generated dialogue with both decoding paths.
+     *
+     * <p>Run with {@code -Dblabber.benchmarks=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "blabber.benchmarks", matches = "true")
+    public void benchmarkLargeDialogue() throws IOException {
+        String json = generateDialogue(10_000);
+        for (int i = 0; i < 5; i++) {   // warmup
+            decodeWithCodec(json);
+            decodeStreaming(json);
+        }
+
+        int iterations = 20;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long codecAllocated = threads.getCurrentThreadAllocatedBytes();
+        long codecTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++) decodeWithCodec(json);
+        codecTime = System.nanoTime() - codecTime;
+        codecAllocated = threads.getCurrentThreadAllocatedBytes() - codecAllocated;
+
+        long streamingAllocated = threads.getCurrentThreadAllocatedBytes();
+        long streamingTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++) decodeStreaming(json);
+        streamingTime = System.nanoTime() - streamingTime;
+        streamingAllocated = threads.getCurrentThreadAllocatedBytes() - streamingAllocated;
+
+        System.out.printf("Decoding %d KiB dialogue (avg of %d runs)%n", json.length() / 1024, iterations);
+        System.out.printf("  tree + codec: %.2f ms, %d KiB allocated%n", codecTime / 1e6 / iterations, codecAllocated / 1024 / iterations);
+        System.out.printf("  streaming:    %.2f ms, %d KiB allocated%n", streamingTime / 1e6 / iterations, streamingAllocated / 1024 / iterations);
+    }
+
+    private static String generateDialogue(int stateCount) {
+        StringBuilder sb = new StringBuilder("{\"start_at\": \"state_0\", \"states\": {");
+        for (int i = 0; i < stateCount; i++) {
+            sb.append("\"state_").append(i).append("\": {\"text\": \"This is the text for generated state number ").append(i).append("\", \"choices\": [");
+            if (i == stateCount - 1) {
+                sb.append("], \"type\": \"end_dialogue\"}");
+            } else {
+                sb.append("{\"text\": \"Go on\", \"next\": \"state_").append(i + 1).append("\"},");
+                sb.append("{\"text\": \"Skip ahead\", \"next\": \"state_").append(stateCount - 1).append("\", \"only_if\": {\"predicate\": \"babblings:full_health\", \"when_unavailable\": {\"display\": \"grayed_out\"}}}");
+                sb.append("]},");
+            }
+        }
+        return sb.append("}}").toString();
+    }
+
+    private static DialogueTemplate decodeWithCodec(String json) {
+        return DialogueTemplate.CODEC.parse(JsonOps.INSTANCE, new Gson().fromJson(json, JsonElement.class)).getOrThrow(GameTestException::new);
+    }
+
+    private static DialogueTemplate decodeStreaming(String json) throws IOException {
+        return DialogueTemplateReader.read(new JsonReader(new StringReader(json))).getOrThrow(GameTestException::new);
+    }
+
+    private static String readResource(String name) throws IOException {
+        try (InputStream in = Objects.requireNonNull(DialogueTemplateReaderTest.class.getResourceAsStream(name))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Blabber
+ * Copyright (C) 2022-2024 Ladysnake
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; If not, see <https://www.gnu.org/licenses>.
+ */
+package org.ladysnake.blabber.impl.common.serialization;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DecoderException;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.encoding.VarInts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PacketCompressionTest {
+    private static final PacketCompression.CompressedCodec<PacketByteBuf, String> CODEC = PacketCompression.compressed("test", PacketCodecs.STRING);
+    private static final String LARGE_VALUE = "Blabber ".repeat(500);
+
+    @AfterEach
+    public void reset() {
+        PacketCompression.configure(PacketCompression.DISABLED, 6);
+    }
+
+    @Test
+    public void valuesAboveThresholdGetCompressed() {
+        PacketCompression.configure(256, 6);
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        CODEC.encode(buf, LARGE_VALUE);
+        Assertions.assertTrue(buf.readableBytes() < LARGE_VALUE.length());
+        Assertions.assertEquals(LARGE_VALUE, CODEC.decode(buf));
+        Assertions.assertEquals(0, buf.readableBytes());
+    }
+
+    @Test
+    public void valuesBelowThresholdAreLeftAsIs() {
+        PacketCompression.configure(256, 6);
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        CODEC.encode(buf, "Hi");
+        CODEC.encode(buf, LARGE_VALUE);
+        Assertions.assertEquals(0, buf.readByte());
+        buf.readerIndex(0);
+        Assertions.assertEquals("Hi", CODEC.decode(buf));
+        Assertions.assertEquals(LARGE_VALUE, CODEC.decode(buf));
+    }
+
+    @Test
+    public void compressionCanBeDisabled() {
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        CODEC.encode(buf, LARGE_VALUE);
+        Assertions.assertTrue(buf.readableBytes() > LARGE_VALUE.length());
+        Assertions.assertEquals(LARGE_VALUE, CODEC.decode(buf));
+    }
+
+    @Test
+    public void disabledCompressionOnlyAddsPrefix() {
+        PacketByteBuf expected = new PacketByteBuf(Unpooled.buffer());
+        VarInts.write(expected, 0);
+        PacketCodecs.STRING.encode(expected, LARGE_VALUE);
+        PacketByteBuf actual = new PacketByteBuf(Unpooled.buffer());
+        CODEC.encode(actual, LARGE_VALUE);
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void preEncodedValuesFollowSettingChanges() {
+        PacketCompression.configure(256, 6);
+        PacketCompression.PreEncoded encoded = CODEC.preEncode(new PacketByteBuf(Unpooled.buffer()), LARGE_VALUE);
+        Assertions.assertTrue(encoded.isCurrent());
+        PacketCompression.configure(256, 9);
+        Assertions.assertFalse(encoded.isCurrent());
+        PacketCompression.configure(512, 6);
+        Assertions.assertFalse(encoded.isCurrent());
+    }
+
+    @Test
+    public void truncatedValuesAreRejected() {
+        PacketCompression.configure(256, 6);
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        CODEC.encode(buf, LARGE_VALUE);
+        PacketByteBuf truncated = new PacketByteBuf(buf.slice(0, buf.readableBytes() - 1));
+        Assertions.assertThrows(DecoderException.class, () -> CODEC.decode(truncated));
+    }
+
+    @Test
+    public void invalidLengthPrefixesAreRejected() {
+        PacketByteBuf oversized = new PacketByteBuf(Unpooled.buffer());
+        VarInts.write(oversized, LARGE_VALUE.length());
+        VarInts.write(oversized, Integer.MAX_VALUE);
+        oversized.writeBytes(new byte[16]);
+        Assertions.assertThrows(DecoderException.class, () -> CODEC.decode(oversized));
+
+        PacketByteBuf negative = new PacketByteBuf(Unpooled.buffer());
+        VarInts.write(negative, LARGE_VALUE.length());
+        VarInts.write(negative, -1);
+        Assertions.assertThrows(DecoderException.class, () -> CODEC.decode(negative));
+
+        PacketByteBuf negativeSize = new PacketByteBuf(Unpooled.buffer());
+        VarInts.write(negativeSize, -1);
+        Assertions.assertThrows(DecoderException.class, () -> CODEC.decode(negativeSize));
+    }
+}
@@ -25,8 +25,10 @@ import net.minecraft.util.Identifier;
 import org.ladysnake.blabber.Blabber;
 import org.ladysnake.blabber.impl.common.DialogueRegistry;
 import org.ladysnake.blabber.impl.common.DialogueScreenHandler;
+import org.ladysnake.blabber.impl.common.PlayerDialogueTracker;
 import org.ladysnake.elmendorf.GameTestUtil;
 
+import java.lang.management.ManagementFactory;
 import java.util.Set;
 
 public final class BlabberTestSuite implements FabricGameTest {
@@ -55,7 +57,8 @@ public final class BlabberTestSuite implements FabricGameTest {
                         Identifier.of("babblings:illustration_tests"),
                         Identifier.of("babblings:mountain_king"),
                         Identifier.of("babblings:perception_check"),
-                        Identifier.of("babblings:remnant_choice")
+                        Identifier.of("babblings:remnant_choice"),
+                        Identifier.of("babblings:weather_report")
                     )
                 ));
         ctx.complete();
@@ -84,4 +87,24 @@ public final class BlabberTestSuite implements FabricGameTest {
         GameTestUtil.assertTrue("dialogue should be at state friendship", player.currentScreenHandler instanceof DialogueScreenHandler handler && handler.getCurrentStateKey().equals("friendship"));
         ctx.complete();
     }
+
+    @GameTest(templateName = EMPTY_STRUCTURE)
+    public void unchangedConditionsDoNotAllocate(TestContext ctx) {
+        ServerPlayerEntity player = ctx.spawnServerPlayer(2, 2, 2);
+        Blabber.startDialogue(player, Identifier.of("babblings:weather_report"));
+        PlayerDialogueTracker tracker = PlayerDialogueTracker.get(player);
+        // Warm up first, so that nothing lazily initialized gets counted
+        for (int i = 0; i < 100; i++) {
+            tracker.refreshConditions();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1000; i++) {
+            tracker.refreshConditions();
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        // Any object takes at least 16 bytes, so less than a byte per refresh means refreshes do not allocate
+        GameTestUtil.assertTrue("refreshing unchanged conditions should not allocate (allocated " + allocated + " bytes over 1000 refreshes)", allocated < 1000);
+        ctx.complete();
+    }
 }